@@ -5,16 +5,25 @@ import block.BlockManagerClient;
 import block.BlockManagerRMIId;
 import block.BlockManagerId;
 import block.BlockManagerServer;
+import block.BlockScrubber;
 import constant.ConfigConstants;
 import constant.PathConstants;
+import file.AlphaFile;
 import file.AlphaFileManagerClient;
+import file.BlockCollector;
+import file.BlockRepairer;
 import file.AlphaFileManagerRMIId;
 import file.AlphaFileManagerId;
 import file.AlphaFileManagerServer;
 import file.FieldId;
 import file.IFile;
 import file.IFileManager;
+import file.Readahead;
+import file.RedundancyPolicy;
+import file.ReplicaSelector;
+import file.ReplicaWriter;
 import util.ByteUtils;
+import util.CacheSimulator;
 import util.ErrorCode;
 
 import java.io.File;
@@ -66,24 +75,29 @@ public class AlphaFileSystem {
         BlockManagerServer.startAllManager();
         AlphaFileManagerServer.init();
         AlphaFileManagerServer.startAllManager();
+        BlockCollector.start();
+        BlockScrubber.setRepairer(new BlockRepairer());
     }
 
     private static void terminate() {
-        BlockManagerServer.stopAllManager();
+        BlockCollector.stop();
+        // file managers flush buffered writes of their files into block managers
         AlphaFileManagerServer.stopAllManager();
+        BlockManagerServer.stopAllManager();
     }
 
     private static void createFile(String[] list) {
-        if (list.length != 3) {
+        if (list.length != 3 && list.length != 4) {
             printHelpHint();
             return;
         }
         AlphaFileManagerId fileManagerId = new AlphaFileManagerId(list[1]);
         FieldId fieldId = new FieldId(list[2]);
+        int blockSize = (list.length == 4) ? Integer.parseInt(list[3]) : ConfigConstants.BLOCK_SIZE;
 
         try {
             IFileManager fileManager = AlphaFileManagerServer.getServer(fileManagerId);
-            fileManager.newFile(fieldId);
+            fileManager.newFile(fieldId, blockSize);
         } catch (ErrorCode e) {
             System.out.println(e.getMessage());
         }
@@ -108,6 +122,59 @@ public class AlphaFileSystem {
         }
     }
 
+    private static void setErasureCoding(String[] list) {
+        if (list.length != 5) {
+            printHelpHint();
+            return;
+        }
+        AlphaFileManagerId fileManagerId = new AlphaFileManagerId(list[1]);
+        FieldId fieldId = new FieldId(list[2]);
+        int dataNum = Integer.parseInt(list[3]);
+        int parityNum = Integer.parseInt(list[4]);
+
+        try {
+            IFileManager fileManager = AlphaFileManagerServer.getServer(fileManagerId);
+            AlphaFile file = (AlphaFile) fileManager.getFile(fieldId);
+            file.setRedundancyPolicy(RedundancyPolicy.erasureCoding(dataNum, parityNum));
+        } catch (ErrorCode e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static void setDurability(String[] list) {
+        if (list.length != 4) {
+            printHelpHint();
+            return;
+        }
+        AlphaFileManagerId fileManagerId = new AlphaFileManagerId(list[1]);
+        FieldId fieldId = new FieldId(list[2]);
+        int durability = Integer.parseInt(list[3]);
+
+        try {
+            IFileManager fileManager = AlphaFileManagerServer.getServer(fileManagerId);
+            AlphaFile file = (AlphaFile) fileManager.getFile(fieldId);
+            file.setDurability(durability);
+        } catch (ErrorCode e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static void simulateCache(String[] list) {
+        if (list.length < 3) {
+            printHelpHint();
+            return;
+        }
+        long[] capacities = new long[list.length - 2];
+        for (int i = 2; i < list.length; ++i)
+            capacities[i - 2] = Long.parseLong(list[i]);
+
+        try {
+            CacheSimulator.printSimulation(new File(list[1]), capacities);
+        } catch (ErrorCode e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
     private static void writeFile(String[] list) {
         if (list.length != 5) {
             printHelpHint();
@@ -164,9 +231,9 @@ public class AlphaFileSystem {
         }
 
         BlockManagerId blockManagerId = new BlockManagerId(list[1]);
-        BlockId blockId = new BlockId(Long.parseLong(list[2]));
 
         try {
+            BlockId blockId = BlockId.valueOf(Long.parseLong(list[2]));
             BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
             Block block = blockManagerServer.getBlock(blockId);
             byte[] data = block.read();
@@ -177,7 +244,7 @@ public class AlphaFileSystem {
     }
 
     private static void createRemoteFile(String[] list) {
-        if (list.length != 5) {
+        if (list.length != 5 && list.length != 6) {
             printHelpHint();
             return;
         }
@@ -186,11 +253,12 @@ public class AlphaFileSystem {
         int port = Integer.parseInt(list[2]);
         String fileManagerIdStr = list[3];
         FieldId fieldId = new FieldId(list[4]);
+        int blockSize = (list.length == 6) ? Integer.parseInt(list[5]) : ConfigConstants.BLOCK_SIZE;
 
         try {
             AlphaFileManagerRMIId fileManagerClientId = new AlphaFileManagerRMIId(hostName, port, fileManagerIdStr);
             IFileManager fileManager = AlphaFileManagerClient.getClient(fileManagerClientId);
-            fileManager.newFile(fieldId);
+            fileManager.newFile(fieldId, blockSize);
         } catch (ErrorCode e) {
             System.out.println(e.getMessage());
         }
@@ -412,11 +480,54 @@ public class AlphaFileSystem {
         }
     }
 
+    private static void collectBlocks(String[] list) {
+        if (list.length != 1) {
+            printHelpHint();
+            return;
+        }
+
+        try {
+            BlockCollector.runCycle();
+            BlockCollector.printStats();
+        } catch (ErrorCode e) {
+            System.out.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void scrubBlocks(String[] list) {
+        if (list.length != 1) {
+            printHelpHint();
+            return;
+        }
+
+        try {
+            for (BlockManagerId blockManagerId : BlockManagerServer.getManagerIds()) {
+                if (BlockManagerServer.isServing(blockManagerId))
+                    BlockManagerServer.getServer(blockManagerId).getScrubber().runPass();
+            }
+            BlockManagerServer.printScrubStats();
+        } catch (ErrorCode e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
     private static void printState() {
         BlockManagerServer.listServers();
         BlockManagerClient.listServers();
         AlphaFileManagerServer.listServers();
         AlphaFileManagerClient.listServers();
+        BlockManagerServer.printDedupStats();
+        BlockManagerServer.printCapacityStats();
+        BlockManagerServer.printLogStats();
+        BlockManagerServer.printCacheStats();
+        BlockManagerServer.printScrubStats();
+        AlphaFileManagerServer.printCacheStats();
+        ReplicaSelector.printStats();
+        ReplicaWriter.printStats();
+        Readahead.printStats();
+        BlockCollector.printStats();
     }
 
     private static void printHelpHint() {
@@ -426,13 +537,15 @@ public class AlphaFileSystem {
     private static void printHelp() {
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append("Instruction formats:\n");
-        stringBuilder.append("create file:    alpha-create  [file manager]  [field]\n");
+        stringBuilder.append("create file:    alpha-create  [file manager]  [field]  ([block size])\n");
         stringBuilder.append("print  file:    alpha-cat     [file manager]  [field]\n");
         stringBuilder.append("write  file:    alpha-write   [file manager]  [field]  [offset]  [where]\n");
         stringBuilder.append("copy   file:    alpha-copy    [src file manager]  [src field]  [dst file manager]  [dst field]\n");
-        stringBuilder.append("read   block:   alpha-hex     [block manager] [block]\n\n");
+        stringBuilder.append("read   block:   alpha-hex     [block manager] [block]\n");
+        stringBuilder.append("erasure code:   alpha-ec      [file manager]  [field]  [data num]  [parity num]\n");
+        stringBuilder.append("durability:     alpha-durability  [file manager]  [field]  [durability]\n\n");
 
-        stringBuilder.append("create remote file:    alpha-remote-create  [host name]  [file manager]  [field]\n");
+        stringBuilder.append("create remote file:    alpha-remote-create  [host name]  [file manager]  [field]  ([block size])\n");
         stringBuilder.append("print  remote file:    alpha-remote-cat     [host name]  [file manager]  [field]\n");
         stringBuilder.append("write  remote file:    alpha-remote-write   [host name]  [file manager]  [field]  [offset]  [where]\n");
         stringBuilder.append("copy   remote file:    alpha-remote-copy    [host name]  [src file manager]  [src field]  [host name]  [dst file manager]  [dst field]\n");
@@ -445,9 +558,13 @@ public class AlphaFileSystem {
         stringBuilder.append("add    block manager client:   alpha-add-bm-client    [host name]  [port]  [block manager]\n");
         stringBuilder.append("remove block manager client:   alpha-remove-bm-client [host name]  [port]  [block manager]\n");
         stringBuilder.append("add    file  manager client:   alpha-add-fm-client    [host name]  [port]  [file manager]\n");
-        stringBuilder.append("remove file  manager client:   alpha-remove-fm-client [host name]  [port]  [file manager]\n\n");
+        stringBuilder.append("remove file  manager client:   alpha-remove-fm-client [host name]  [port]  [file manager]\n");
+        stringBuilder.append("collect unreferenced blocks:   alpha-gc\n");
+        stringBuilder.append("scrub and repair blocks:       alpha-scrub\n");
+        stringBuilder.append("simulate cache policies:       alpha-cache-sim  [trace file]  [cache size] ...\n\n");
 
-        stringBuilder.append("[where] arg:  CURR : 0   HEAD : 1   TAIL : 2\n\n");
+        stringBuilder.append("[where] arg:  CURR : 0   HEAD : 1   TAIL : 2\n");
+        stringBuilder.append("[durability] arg:  GROUP : 0   SYNC : 1   ASYNC : 2\n\n");
 
         stringBuilder.append("print state info:  state\n");
         stringBuilder.append("print help  info:  help\n");
@@ -481,6 +598,12 @@ public class AlphaFileSystem {
                     case "alpha-copy":
                         copyFile(list);
                         break;
+                    case "alpha-ec":
+                        setErasureCoding(list);
+                        break;
+                    case "alpha-durability":
+                        setDurability(list);
+                        break;
                     case "alpha-hex":
                         hexBlock(list);
                         break;
@@ -523,6 +646,15 @@ public class AlphaFileSystem {
                     case "alpha-remove-fm-client":
                         removeFileClient(list);
                         break;
+                    case "alpha-gc":
+                        collectBlocks(list);
+                        break;
+                    case "alpha-scrub":
+                        scrubBlocks(list);
+                        break;
+                    case "alpha-cache-sim":
+                        simulateCache(list);
+                        break;
                     case "state":
                         printState();
                         break;
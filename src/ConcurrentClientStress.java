@@ -0,0 +1,102 @@
+import constant.ConfigConstants;
+import constant.PathConstants;
+import file.AlphaFileManagerClient;
+import file.AlphaFileManagerId;
+import file.AlphaFileManagerRMIId;
+import file.AlphaFileManagerServer;
+import file.FieldId;
+import file.IFile;
+import file.IFileManager;
+import util.ErrorCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// stress test of many concurrent clients, half local and half through RMI, creating, writing and reading back
+// their own files under shared file managers and reading one shared file, catches races on file id allocation,
+// file manager meta and server registries
+public class ConcurrentClientStress {
+    private static final int CLIENT_NUM = 32;
+    private static final int THREAD_NUM = 16;
+    private static final int FILE_NUM = 20;
+    private static final int FILE_SIZE = 3000;
+
+    public static void main(String[] args) {
+        // file system servers are started by its static init
+        new AlphaFileSystem();
+
+        IFileManager localManager = AlphaFileManagerServer.getServer(
+                new AlphaFileManagerId(PathConstants.FILE_MANAGER_PREFIX + 1));
+        IFileManager remoteManager = AlphaFileManagerClient.getClient(new AlphaFileManagerRMIId(
+                ConfigConstants.RMI_SERVER_HOST, ConfigConstants.RMI_SERVER_PORT, PathConstants.FILE_MANAGER_PREFIX + 2));
+
+        byte[] sharedData = new byte[FILE_SIZE];
+        new Random(0).nextBytes(sharedData);
+        FieldId sharedId = new FieldId("stress-shared-" + System.nanoTime());
+        IFile sharedFile = localManager.newFile(sharedId);
+        sharedFile.write(sharedData);
+        sharedFile.close();
+
+        AtomicInteger mismatchCount = new AtomicInteger();
+        AtomicInteger errorCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_NUM);
+        List<Future<?>> futureList = new ArrayList<>();
+        for (int client = 0; client < CLIENT_NUM; ++client) {
+            int clientNum = client;
+            futureList.add(executor.submit(() -> {
+                IFileManager fileManager = (clientNum % 2 == 0) ? localManager : remoteManager;
+                for (int i = 0; i < FILE_NUM; ++i) {
+                    byte[] data = new byte[FILE_SIZE];
+                    new Random(clientNum * 100 + i).nextBytes(data);
+                    FieldId fieldId = new FieldId("stress-" + clientNum + "-" + i + "-" + System.nanoTime());
+
+                    IFile file = fileManager.newFile(fieldId);
+                    file.write(data);
+                    file.close();
+
+                    IFile readFile = fileManager.getFile(fieldId);
+                    readFile.move(0, IFile.MOVE_HEAD);
+                    if (!Arrays.equals(readFile.read(FILE_SIZE), data))
+                        mismatchCount.incrementAndGet();
+
+                    // pointer of cached file is shared by clients, moved and read under file lock
+                    IFile readShared = localManager.getFile(sharedId);
+                    byte[] sharedRead;
+                    synchronized (readShared) {
+                        readShared.move(0, IFile.MOVE_HEAD);
+                        sharedRead = readShared.read(FILE_SIZE);
+                    }
+                    if (!Arrays.equals(sharedRead, sharedData))
+                        mismatchCount.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futureList) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                errorCount.incrementAndGet();
+                System.out.println((e.getCause() instanceof ErrorCode) ? e.getCause().getMessage() : e.getCause().toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errorCount.incrementAndGet();
+            }
+        }
+        executor.shutdown();
+
+        boolean isPassed = mismatchCount.get() == 0 && errorCount.get() == 0;
+        System.out.println(CLIENT_NUM + " clients, " + CLIENT_NUM * FILE_NUM + " files, " + mismatchCount.get()
+                + " mismatched reads, " + errorCount.get() + " failed clients");
+        System.out.println(isPassed ? "Concurrent client stress passed" : "Concurrent client stress failed");
+        System.exit(isPassed ? 0 : 1);
+    }
+}
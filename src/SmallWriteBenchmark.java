@@ -0,0 +1,67 @@
+import constant.ConfigConstants;
+import constant.PathConstants;
+import file.AlphaFileManagerClient;
+import file.AlphaFileManagerId;
+import file.AlphaFileManagerRMIId;
+import file.AlphaFileManagerServer;
+import file.FieldId;
+import file.IFile;
+import file.IFileManager;
+import file.ReplicaWriter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// regression benchmark of small writes buffered per file: times runs of small writes followed by close at
+// head, middle and tail of a file, through a local and a remote file manager, then checks data read back
+public class SmallWriteBenchmark {
+    private static final int FILE_SIZE = 1024 * 1024;
+    private static final int WRITE_NUM = 50;
+
+    public static void main(String[] args) {
+        // file system servers are started by its static init
+        new AlphaFileSystem();
+
+        AlphaFileManagerId localId = new AlphaFileManagerId(PathConstants.FILE_MANAGER_PREFIX + 1);
+        AlphaFileManagerRMIId remoteId = new AlphaFileManagerRMIId(ConfigConstants.RMI_SERVER_HOST,
+                ConfigConstants.RMI_SERVER_PORT, PathConstants.FILE_MANAGER_PREFIX + 2);
+
+        boolean isPassed = run("local", AlphaFileManagerServer.getServer(localId))
+                && run("remote", AlphaFileManagerClient.getClient(remoteId));
+        ReplicaWriter.printStats();
+        System.out.println(isPassed ? "Small write benchmark passed" : "Small write benchmark failed");
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    private static boolean run(String kind, IFileManager fileManager) {
+        byte[] expected = new byte[FILE_SIZE];
+        new Random(1).nextBytes(expected);
+
+        FieldId fieldId = new FieldId("small-write-" + kind + "-" + System.nanoTime());
+        IFile file = fileManager.newFile(fieldId);
+        file.write(expected);
+        file.close();
+
+        for (long offset : new long[] {0, FILE_SIZE / 2, FILE_SIZE - 100}) {
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < WRITE_NUM; ++i) {
+                byte[] data = ("x" + i).getBytes();
+                file.move(offset + i, IFile.MOVE_HEAD);
+                file.write(data);
+                System.arraycopy(data, 0, expected, (int) offset + i, data.length);
+            }
+            file.close();
+            System.out.println(kind + ": " + WRITE_NUM + " small writes at " + offset + " took "
+                    + (System.nanoTime() - startNanos) / 1000000 + " ms");
+        }
+
+        // read back through file manager, not through buffered handle
+        IFile readFile = fileManager.getFile(fieldId);
+        readFile.move(0, IFile.MOVE_HEAD);
+        if (!Arrays.equals(readFile.read(FILE_SIZE), expected)) {
+            System.out.println(kind + ": data read back does not match");
+            return false;
+        }
+        return true;
+    }
+}
@@ -1,46 +1,122 @@
 package block;
 
-import constant.PathConstants;
 import constant.ConfigConstants;
 import util.ByteUtils;
 import util.ErrorCode;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
-import java.io.File;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Block implements IBlock, Serializable {
     private static final long serialVersionUID = -669111775113682194L;
 
-    // set block size by config
-    private final static int SIZE = ConfigConstants.BLOCK_SIZE;
+    // verify modes, when data is checked against checksum on read
+    public final static String VERIFY_ALWAYS = "ALWAYS";    // every read
+    public final static String VERIFY_ON_LOAD = "ON_LOAD";  // first read after loaded from disk or received over RMI
+    public final static String VERIFY_SAMPLED = "SAMPLED";  // on load, and a sample of later reads
 
     // block meta info
     private static class Meta implements Serializable {
         private static final long serialVersionUID = 4023762168474307036L;
 
+        // fixed-width binary header: magic, checksum type, codec type, reserved, size, checksum, stored size
+        private final static int MAGIC = 0x414C5048;
+        private final static int HEADER_SIZE = 32;
+        private final static int CHECKSUM_OFFSET = 12;
+        private final static int CHECKSUM_MAX_LENGTH = 16;
+        private final static int STORED_SIZE_OFFSET = 28;
+
         private final int size;
-        private final String checksum;
+        private final byte checksumType;
+        private final byte[] checksum;      // checksum of uncompressed data
+        private final byte codecType;
+        private final int storedSize;
 
-        Meta(int size, String checksum) {
+        Meta(int size, byte checksumType, byte[] checksum, byte codecType, int storedSize) {
             this.size = size;
+            this.checksumType = checksumType;
             this.checksum = checksum;
+            this.codecType = codecType;
+            this.storedSize = storedSize;
+        }
+
+        byte[] toBytes() {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.put(checksumType);
+            buffer.put(codecType);
+            buffer.position(buffer.position() + 2);
+            buffer.putInt(size);
+            buffer.put(checksum);
+            buffer.putInt(STORED_SIZE_OFFSET, storedSize);
+            return buffer.array();
+        }
+
+        static Meta fromBytes(byte[] bytes) {
+            return fromBuffer(ByteBuffer.wrap(bytes));
+        }
+
+        // parse header at position of given buffer, legacy text meta is copied out first
+        static Meta fromBuffer(ByteBuffer buffer) {
+            if (buffer.remaining() != HEADER_SIZE || buffer.getInt(buffer.position()) != MAGIC) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return fromLegacyBytes(bytes);
+            }
+            buffer = buffer.slice();
+            buffer.position(Integer.BYTES);
+
+            byte checksumType = buffer.get();
+            byte codecType = buffer.get();
+            buffer.position(buffer.position() + 2);
+            int size = buffer.getInt();
+
+            // headers written before compression have zero codec and stored size
+            int storedSize = (codecType == NoneCodec.TYPE) ? size : buffer.getInt(STORED_SIZE_OFFSET);
+
+            int checksumLength = IChecksum.getChecksum(checksumType).getLength();
+            if (checksumLength > CHECKSUM_MAX_LENGTH)
+                throw new ErrorCode(ErrorCode.BLOCK_META_FILE_INVALID);
+            byte[] checksum = new byte[checksumLength];
+            buffer.position(CHECKSUM_OFFSET);
+            buffer.get(checksum);
+
+            return new Meta(size, checksumType, checksum, codecType, storedSize);
+        }
+
+        // parse legacy text meta: size and MD5 digest formatted by Arrays.toString
+        private static Meta fromLegacyBytes(byte[] bytes) {
+            String[] metaStr = new String(bytes).split("\n");
+
+            int size = Integer.parseInt(metaStr[0]);
+            String digestStr = metaStr[1].trim();
+            String[] digestBytes = digestStr.substring(1, digestStr.length() - 1).split(",");
+
+            byte[] checksum = new byte[digestBytes.length];
+            for (int i = 0; i < digestBytes.length; ++i)
+                checksum[i] = Byte.parseByte(digestBytes[i].trim());
+
+            return new Meta(size, MD5Checksum.TYPE, checksum, NoneCodec.TYPE, size);
         }
 
         @Override
         public String toString() {
-            return "size: " + size + "\n checksum: " + checksum;
+            return "size: " + size + "\n checksum type: " + checksumType + "\n checksum: " + ByteUtils.bytesToHexStr(checksum)
+                    + "\n codec type: " + codecType + "\n stored size: " + storedSize;
         }
     }
 
     private final BlockManagerId blockManagerId;
     private final BlockId blockId;
     private final Meta meta;
-    private final byte[] data;
+    private final byte[] storedData;    // data encoded by codec of meta, also sent over RMI
+
+    // decompressed data, filled on first read
+    private transient byte[] data;
+    // data matched checksum, not sent over RMI so receiver verifies again
+    private transient boolean isVerified;
 
     // get existing block under given block manager
     public Block(BlockManagerId blockManagerId, BlockId blockId) {
@@ -50,31 +126,104 @@ public class Block implements IBlock, Serializable {
         this.blockManagerId = blockManagerId;
         this.blockId = blockId;
         this.meta = readMeta();
-        this.data = readData();
+        this.storedData = readData(meta.storedSize);
+        this.data = null;
+        this.isVerified = false;
+    }
+
+    // get existing block from record views of block cache, copied since block is sent over RMI,
+    // records are verified before they are cached
+    Block(BlockManagerId blockManagerId, BlockId blockId, ByteBuffer metaBuffer, ByteBuffer dataBuffer) {
+        this.blockManagerId = blockManagerId;
+        this.blockId = blockId;
+
+        this.meta = Meta.fromBuffer(metaBuffer);
+        this.storedData = new byte[dataBuffer.remaining()];
+        dataBuffer.get(storedData);
+        this.data = null;
+        this.isVerified = true;
+    }
+
+    // data of cached record decoded straight from its views with no block object, raw data is copied once into
+    // returned array, compressed data is copied out first since codecs work on arrays; records are verified
+    // before they are cached, so checked again only as verify mode asks
+    static byte[] decode(ByteBuffer metaBuffer, ByteBuffer dataBuffer) {
+        return decode(Meta.fromBuffer(metaBuffer), dataBuffer);
+    }
+
+    private static byte[] decode(Meta meta, ByteBuffer dataBuffer) {
+        byte[] data;
+        if (meta.codecType == NoneCodec.TYPE) {
+            data = new byte[dataBuffer.remaining()];
+            dataBuffer.get(data);
+        } else {
+            byte[] stored = new byte[dataBuffer.remaining()];
+            dataBuffer.get(stored);
+            data = IBlockCodec.getCodec(meta.codecType).decompress(stored, meta.size);
+        }
+
+        if (needVerify(true) && !Arrays.equals(IChecksum.getChecksum(meta.checksumType).compute(data), meta.checksum))
+            throw new ErrorCode(ErrorCode.CHECKSUM_CHECK_FAILED);
+        return data;
+    }
+
+    // copy part of cached record, raw one straight from its data view unless verify mode asks to check it,
+    // compressed one through its decoded data, so a hit is served by one cache access
+    static Boolean copyPart(ByteBuffer metaBuffer, ByteBuffer dataBuffer, int startIndex, byte[] dest, int destOffset, int length) {
+        Meta meta = Meta.fromBuffer(metaBuffer);
+        if (meta.codecType == NoneCodec.TYPE && !needVerify(true)) {
+            dataBuffer.get(dataBuffer.position() + startIndex, dest, destOffset, Math.min(length, dataBuffer.remaining() - startIndex));
+            return true;
+        }
+
+        byte[] data = decode(meta, dataBuffer);
+        System.arraycopy(data, startIndex, dest, destOffset, Math.min(length, data.length - startIndex));
+        return true;
     }
 
     // create new block with data under given block manager
     public Block(BlockManagerId blockManagerId, byte[] data) {
+        this(blockManagerId, null, data);
+    }
+
+    // create block with data under given id, new id if null, existing id rewrites a damaged record
+    Block(BlockManagerId blockManagerId, BlockId blockId, byte[] data) {
         if (null == blockManagerId || null == data)
             throw new ErrorCode(ErrorCode.NULL_BLOCK_ARGUMENT);
 
         byte[] bytes = align(data);
 
         this.blockManagerId = blockManagerId;
-        this.blockId = getNewBlockId();
+        this.blockId = (null == blockId) ? getNewBlockId() : blockId;
 
-        this.meta = writeMeta(bytes);
-        this.data = writeData(bytes);
+        IBlockCodec codec = IBlockCodec.getCodec(ConfigConstants.BLOCK_CODEC);
+        byte[] compressed = codec.compress(bytes);
+
+        // skip compression when it does not help
+        if (compressed.length > bytes.length * (1 - ConfigConstants.BLOCK_CODEC_MIN_SAVING)) {
+            codec = new NoneCodec();
+            compressed = bytes;
+        }
+
+        this.meta = createMeta(bytes, codec.getType(), compressed.length);
+        this.storedData = compressed;
+        this.data = bytes;
+        this.isVerified = true;
+        writeBlock();
     }
 
-    // put data into block size array
-    private byte[] align(byte[] data) {
-        if (data.length > SIZE)
+    // put data into array of smallest valid block size, power of 2 between default and max size
+    static byte[] align(byte[] data) {
+        if (data.length > ConfigConstants.BLOCK_MAX_SIZE)
             throw new ErrorCode(ErrorCode.INVALID_BLOCK_DATA);
 
+        int size = ConfigConstants.BLOCK_SIZE;
+        while (size < data.length)
+            size <<= 1;
+
         byte[] bytes;
-        if (data.length < SIZE) {
-            bytes = new byte[SIZE];
+        if (data.length < size) {
+            bytes = new byte[size];
             System.arraycopy(data, 0, bytes, 0, data.length);
         } else {
             bytes = data;
@@ -83,119 +232,46 @@ public class Block implements IBlock, Serializable {
         return bytes;
     }
 
-    // get id for new block,  add 1 to id count
+    // get id for new block from lease of block manager
     private BlockId getNewBlockId() {
-        File file = new File(PathConstants.BLOCK_MANAGER_PATH, PathConstants.BLOCK_ID_COUNT);
-        long newBlockId;
-
-        try {
-            RandomAccessFile input = new RandomAccessFile(file, "r");
-
-            // read long-type block id
-            byte[] bytes = new byte[Long.BYTES];
-            if (input.read(bytes) != bytes.length)
-                throw new ErrorCode(ErrorCode.INVALID_BLOCK_ID);
-            input.close();
-
-            // increase id count
-            newBlockId = ByteUtils.bytesToLong(bytes) + 1;
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
-        }
-
-        try {
-            // update id count file
-            RandomAccessFile output = new RandomAccessFile(file, "rwd");
-            byte[] bytes = ByteUtils.longToBytes(newBlockId);
-            output.write(bytes);
-            output.close();
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
-        }
-
-        return new BlockId(newBlockId);
+        BlockIdAllocator blockIdAllocator = BlockManagerServer.getServer(blockManagerId).getBlockIdAllocator();
+        return new BlockId(blockIdAllocator.allocate());
     }
 
-    // write serialized meta info into meta file
-    private Meta writeMeta(byte[] data) {
-        BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
-        File file = new File(blockManagerServer.getPath(), blockId.getId() + PathConstants.META_SUFFIX);
-
-        try {
-            RandomAccessFile output = new RandomAccessFile(file, "rwd");
-
-            // use MD5 to calculate checksum
-            MessageDigest MD5 = MessageDigest.getInstance("MD5");
-            MD5.update(data);
-            String checksum = Arrays.toString(MD5.digest());
-
-            // write meta object into meta file
-            Meta meta = new Meta(SIZE, checksum);
-
-            String metaStr = SIZE + "\n" + checksum;
-            output.write(metaStr.getBytes());
-            output.close();
-
-            return meta;
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
-        } catch (NoSuchAlgorithmException e) {
-            throw new ErrorCode(ErrorCode.MD5_INVALID);
-        }
+    // calculate meta info of given data
+    private Meta createMeta(byte[] data, byte codecType, int storedSize) {
+        IChecksum checksum = IChecksum.getChecksum(ConfigConstants.BLOCK_CHECKSUM);
+        return new Meta(data.length, checksum.getType(), checksum.compute(data), codecType, storedSize);
     }
 
-    // write data into data file
-    private byte[] writeData(byte[] data) {
-        BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
-        File file = new File(blockManagerServer.getPath(), blockId.getId() + PathConstants.DATA_SUFFIX);
-
-        try {
-            RandomAccessFile output = new RandomAccessFile(file, "rwd");
-            output.write(data);
-            output.close();
-
-            return data;
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
-        }
+    // append meta info and data into segment store of block manager
+    private void writeBlock() {
+        BlockStore blockStore = BlockManagerServer.getServer(blockManagerId).getBlockStore();
+        blockStore.write(blockId.getId(), meta.toBytes(), storedData);
     }
 
-    // get meta object from meta file
+    // get meta object from block store
     private Meta readMeta() {
-        BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
-        File file = new File(blockManagerServer.getPath(), blockId.getId() + PathConstants.META_SUFFIX);
+        BlockStore blockStore = BlockManagerServer.getServer(blockManagerId).getBlockStore();
+        byte[] bytes = blockStore.readMeta(blockId.getId());
 
         try {
-            RandomAccessFile input = new RandomAccessFile(file, "r");
-
-            int metaSize = Integer.parseInt(input.readLine());
-            String metaChecksum = input.readLine();
-
-            Meta meta = new Meta(metaSize, metaChecksum);
-            input.close();
-            return meta;
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+            return Meta.fromBytes(bytes);
+        } catch (ErrorCode e) {
+            throw e;
         } catch (Exception e) {
             throw new ErrorCode(ErrorCode.BLOCK_META_FILE_INVALID);
         }
     }
 
-    // get data from data file
-    private byte[] readData() {
-        BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
-        File file = new File(blockManagerServer.getPath(), blockId.getId() + PathConstants.DATA_SUFFIX);
+    // get data of given size from block store
+    private byte[] readData(int size) {
+        BlockStore blockStore = BlockManagerServer.getServer(blockManagerId).getBlockStore();
+        byte[] bytes = blockStore.readData(blockId.getId());
 
-        try {
-            RandomAccessFile input = new RandomAccessFile(file, "r");
-            byte[] bytes = new byte[SIZE];
-            if (input.read(bytes) != bytes.length)
-                throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
-            input.close();
-            return bytes;
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
-        }
+        if (bytes.length != size)
+            throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
+        return bytes;
     }
 
     @Override
@@ -210,28 +286,55 @@ public class Block implements IBlock, Serializable {
 
     @Override
     public byte[] read() {
-        MessageDigest MD5;
+        if (null == data)
+            data = IBlockCodec.getCodec(meta.codecType).decompress(storedData, meta.size);
 
-        try {
-            MD5 = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new ErrorCode(ErrorCode.MD5_INVALID);
+        if (needVerify(isVerified)) {
+            byte[] checksum = IChecksum.getChecksum(meta.checksumType).compute(data);
+
+            // verify checksum
+            if (!Arrays.equals(checksum, meta.checksum)) {
+                throw new ErrorCode(ErrorCode.CHECKSUM_CHECK_FAILED);
+            }
+            isVerified = true;
         }
 
-        MD5.update(data);
-        String checksum = Arrays.toString(MD5.digest());
+        return data;
+    }
 
-        // verify checksum
-        if (checksum.compareTo(meta.checksum) != 0) {
-            throw new ErrorCode(ErrorCode.CHECKSUM_CHECK_FAILED);
+    private static boolean needVerify(boolean isVerified) {
+        switch (ConfigConstants.BLOCK_VERIFY_MODE) {
+            case VERIFY_ALWAYS:
+                return true;
+            case VERIFY_ON_LOAD:
+                return !isVerified;
+            case VERIFY_SAMPLED:
+                return !isVerified || ThreadLocalRandom.current().nextDouble() < ConfigConstants.BLOCK_VERIFY_SAMPLE_RATE;
+            default:
+                throw new ErrorCode(ErrorCode.UNKNOWN_VERIFY_MODE, ConfigConstants.BLOCK_VERIFY_MODE);
         }
+    }
 
-        return data;
+    // check data loaded from disk before it is cached
+    void verify() {
+        read();
     }
 
     @Override
     public int blockSize() {
-        Meta meta = readMeta();
         return meta.size;
     }
+
+    public int storedSize() {
+        return meta.storedSize;
+    }
+
+    // stored record of block as written to block store, logged by write-ahead log
+    byte[] getMetaBytes() {
+        return meta.toBytes();
+    }
+
+    byte[] getStoredData() {
+        return storedData;
+    }
 }
@@ -0,0 +1,295 @@
+package block;
+
+import util.ICachePolicy;
+import util.LongIntMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.LongConsumer;
+
+// off-heap cache of stored block records, direct memory slabs are split into equal slots of one size class,
+// entries are found through primitive id index and admitted and evicted by cache policy of their size class
+public class BlockCache {
+    // slot header: block id, meta length, data length
+    private final static int SLOT_HEADER_SIZE = Long.BYTES + Integer.BYTES * 2;
+    // room for header and meta beyond power of 2 data size
+    private final static int SLOT_EXTRA_SIZE = 64;
+    private final static int NO_SLOT = -1;
+
+    private static class SizeClass {
+        private final int slotSize;
+        private final int slotsPerSlab;
+        private final ICachePolicy<Long> policy;    // capacity follows slots of assigned slabs
+        private int[] slabIndexes = new int[0];     // slabs assigned to this class in order
+        private int[] freeHandles = new int[0];     // stack of free slot handles
+        private int freeSlotNum = 0;
+
+        SizeClass(int slotSize, int slabSize, String policyName) {
+            this.slotSize = slotSize;
+            this.slotsPerSlab = slabSize / slotSize;
+            this.policy = ICachePolicy.getPolicy(policyName, 0);
+        }
+    }
+
+    private final int slabSize;
+    private final int maxSlotsPerSlab;
+    private final ByteBuffer[] slabs;           // allocated on first assignment
+    private final int[] slabClasses;            // size class of slab, -1 if unassigned
+    private final SizeClass[] sizeClasses;
+    private final LongIntMap index;             // block id to slot handle, slab * max slots per slab + slot
+    private final ReentrantReadWriteLock lock;
+
+    private long usedBytes = 0;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private long evictionCount = 0;
+    private long rejectionCount = 0;
+
+    // cache of given bytes in slabs of given size, records up to max record size are cached
+    public BlockCache(long capacity, int slabSize, int minDataSize, int maxDataSize, String policyName) {
+        int slabNum = (int) (capacity / slabSize);
+        if (maxDataSize + SLOT_EXTRA_SIZE > slabSize)
+            slabNum = 0;    // largest block does not fit, cache disabled
+
+        this.slabSize = slabSize;
+        this.maxSlotsPerSlab = slabSize / (minDataSize + SLOT_EXTRA_SIZE);
+        if ((long) slabNum * maxSlotsPerSlab > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many slots: " + capacity);
+
+        this.slabs = new ByteBuffer[slabNum];
+        this.slabClasses = new int[slabNum];
+        for (int i = 0; i < slabNum; ++i)
+            slabClasses[i] = -1;
+
+        int classNum = 0;
+        for (int size = minDataSize; size <= maxDataSize; size <<= 1)
+            ++classNum;
+        this.sizeClasses = new SizeClass[classNum];
+        for (int i = 0, size = minDataSize; i < classNum; ++i, size <<= 1)
+            sizeClasses[i] = new SizeClass(size + SLOT_EXTRA_SIZE, slabSize, policyName);
+
+        this.index = new LongIntMap();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    // read cached record through read-only views of its meta and data,
+    // views are only valid inside reader since slot may be reused once lock is released
+    public <T> T get(long blockId, BiFunction<ByteBuffer, ByteBuffer, T> reader) {
+        lock.readLock().lock();
+        try {
+            int handle = index.get(blockId, NO_SLOT);
+            if (handle == NO_SLOT) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            hitCount.incrementAndGet();
+
+            int slab = handle / maxSlotsPerSlab;
+            int slot = handle % maxSlotsPerSlab;
+            SizeClass sizeClass = sizeClasses[slabClasses[slab]];
+            // readers share the cache lock, policy bookkeeping is serialized per size class
+            synchronized (sizeClass.policy) {
+                sizeClass.policy.onHit(blockId);
+            }
+
+            ByteBuffer buffer = slabs[slab];
+            int offset = slot * sizeClass.slotSize;
+            int metaLength = buffer.getInt(offset + Long.BYTES);
+            int dataLength = buffer.getInt(offset + Long.BYTES + Integer.BYTES);
+            int metaOffset = offset + SLOT_HEADER_SIZE;
+            return reader.apply(buffer.slice(metaOffset, metaLength).asReadOnlyBuffer(),
+                    buffer.slice(metaOffset + metaLength, dataLength).asReadOnlyBuffer());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long blockId) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(blockId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // offer stored record of block after a miss or write, policy decides whether it is kept;
+    // records too large for any slot are skipped
+    public void put(long blockId, byte[] meta, byte[] data) {
+        int recordSize = SLOT_HEADER_SIZE + meta.length + data.length;
+        int classIndex = 0;
+        while (classIndex < sizeClasses.length && sizeClasses[classIndex].slotSize < recordSize)
+            ++classIndex;
+        if (classIndex == sizeClasses.length || slabs.length == 0)
+            return;
+
+        lock.writeLock().lock();
+        try {
+            if (index.containsKey(blockId))
+                removeEntry(blockId);
+
+            SizeClass sizeClass = sizeClasses[classIndex];
+            // grow class with unassigned slab before evicting, take one from other class if it has none
+            if (sizeClass.freeSlotNum == 0 && !assignSlab(classIndex, findFreeSlab()) && sizeClass.slabIndexes.length == 0
+                    && !assignSlab(classIndex, stealSlab()))
+                return;
+
+            boolean[] isRejected = new boolean[1];
+            sizeClass.policy.onMiss(blockId);
+            sizeClass.policy.onInsert(blockId, victim -> {
+                if (victim == blockId) {
+                    isRejected[0] = true;
+                    ++rejectionCount;
+                } else {
+                    freeSlot(index.remove(victim, NO_SLOT));
+                    ++evictionCount;
+                }
+            });
+            if (isRejected[0])
+                return;
+
+            // policy holds no more keys than slots, so a slot is free
+            int handle = sizeClass.freeHandles[--sizeClass.freeSlotNum];
+            int slab = handle / maxSlotsPerSlab;
+            int offset = (handle % maxSlotsPerSlab) * sizeClass.slotSize;
+            ByteBuffer buffer = slabs[slab];
+            buffer.putLong(offset, blockId);
+            buffer.putInt(offset + Long.BYTES, meta.length);
+            buffer.putInt(offset + Long.BYTES + Integer.BYTES, data.length);
+            buffer.put(offset + SLOT_HEADER_SIZE, meta);
+            buffer.put(offset + SLOT_HEADER_SIZE + meta.length, data);
+
+            index.put(blockId, handle);
+            usedBytes += recordSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // visit ids of cached blocks, cache is locked for reads meanwhile
+    public void forEachId(LongConsumer action) {
+        lock.readLock().lock();
+        try {
+            index.forEachKey(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void remove(long blockId) {
+        lock.writeLock().lock();
+        try {
+            if (index.containsKey(blockId))
+                removeEntry(blockId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds write lock
+    private void removeEntry(long blockId) {
+        int handle = index.remove(blockId, NO_SLOT);
+        sizeClasses[slabClasses[handle / maxSlotsPerSlab]].policy.onRemove(blockId);
+        freeSlot(handle);
+    }
+
+    // caller holds write lock and has removed handle from index and policy
+    private void freeSlot(int handle) {
+        int slab = handle / maxSlotsPerSlab;
+        SizeClass sizeClass = sizeClasses[slabClasses[slab]];
+        ByteBuffer buffer = slabs[slab];
+        int offset = (handle % maxSlotsPerSlab) * sizeClass.slotSize;
+
+        usedBytes -= SLOT_HEADER_SIZE + buffer.getInt(offset + Long.BYTES) + buffer.getInt(offset + Long.BYTES + Integer.BYTES);
+        buffer.putLong(offset, 0);
+        sizeClass.freeHandles[sizeClass.freeSlotNum++] = handle;
+    }
+
+    private int findFreeSlab() {
+        for (int slab = 0; slab < slabs.length; ++slab) {
+            if (slabClasses[slab] < 0)
+                return slab;
+        }
+        return -1;
+    }
+
+    // evict all entries of last slab of the class holding most slabs, return freed slab
+    private int stealSlab() {
+        SizeClass victim = null;
+        for (SizeClass sizeClass : sizeClasses) {
+            if (null == victim || sizeClass.slabIndexes.length > victim.slabIndexes.length)
+                victim = sizeClass;
+        }
+        if (null == victim || victim.slabIndexes.length == 0)
+            return -1;
+
+        int slab = victim.slabIndexes[victim.slabIndexes.length - 1];
+        for (int slot = 0; slot < victim.slotsPerSlab; ++slot) {
+            long blockId = slabs[slab].getLong(slot * victim.slotSize);
+            if (blockId != 0) {
+                removeEntry(blockId);
+                ++evictionCount;
+            }
+        }
+
+        // drop free handles of the slab, all its slots are free now
+        int freeSlotNum = 0;
+        for (int i = 0; i < victim.freeSlotNum; ++i) {
+            if (victim.freeHandles[i] / maxSlotsPerSlab != slab)
+                victim.freeHandles[freeSlotNum++] = victim.freeHandles[i];
+        }
+        victim.freeSlotNum = freeSlotNum;
+        victim.slabIndexes = Arrays.copyOf(victim.slabIndexes, victim.slabIndexes.length - 1);
+        victim.policy.setCapacity(victim.policy.getCapacity() - victim.slotsPerSlab);
+        slabClasses[slab] = -1;
+        return slab;
+    }
+
+    // give unassigned slab to size class, all its slots free
+    private boolean assignSlab(int classIndex, int slab) {
+        if (slab < 0)
+            return false;
+
+        SizeClass sizeClass = sizeClasses[classIndex];
+        if (null == slabs[slab])
+            slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+        slabClasses[slab] = classIndex;
+
+        sizeClass.slabIndexes = Arrays.copyOf(sizeClass.slabIndexes, sizeClass.slabIndexes.length + 1);
+        sizeClass.slabIndexes[sizeClass.slabIndexes.length - 1] = slab;
+        sizeClass.freeHandles = Arrays.copyOf(sizeClass.freeHandles, sizeClass.slabIndexes.length * sizeClass.slotsPerSlab);
+        // push in reverse so slots are handed out in address order
+        for (int slot = sizeClass.slotsPerSlab - 1; slot >= 0; --slot) {
+            slabs[slab].putLong(slot * sizeClass.slotSize, 0);
+            sizeClass.freeHandles[sizeClass.freeSlotNum++] = slab * maxSlotsPerSlab + slot;
+        }
+        sizeClass.policy.setCapacity(sizeClass.policy.getCapacity() + sizeClass.slotsPerSlab);
+        return true;
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            int assigned = 0;
+            for (int slabClass : slabClasses) {
+                if (slabClass >= 0)
+                    ++assigned;
+            }
+            return String.format("%s, %d blocks, %d bytes in %d/%d slabs, %d hits, %d misses, %d evictions, %d rejections, hit rate %.2f",
+                    sizeClasses[0].policy.getClass().getSimpleName(), index.size(), usedBytes, assigned, slabs.length,
+                    hitCount.get(), missCount.get(), evictionCount, rejectionCount, getHitRate());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package block;
+
+import util.ErrorCode;
+import util.LongBitmap;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+// content fingerprint to block id index of one block manager, kept in memory
+public class BlockDedupIndex {
+    private final static String FINGERPRINT_ALGORITHM = "SHA-256";
+
+    private final HashMap<ByteBuffer, Long> blockMap;     // fingerprint -> block id
+    private final HashMap<Long, ByteBuffer> fingerprintMap;
+
+    // blocks returned by dedup since last collection, not referenced by file meta yet
+    private LongBitmap pinnedSet;
+
+    private long logicalNum = 0;
+    private long hitNum = 0;
+
+    public BlockDedupIndex() {
+        this.blockMap = new HashMap<>();
+        this.fingerprintMap = new HashMap<>();
+        this.pinnedSet = new LongBitmap();
+    }
+
+    public static byte[] fingerprint(byte[] data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(FINGERPRINT_ALGORITHM);
+            return digest.digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ErrorCode(ErrorCode.FINGERPRINT_INVALID);
+        }
+    }
+
+    // get existing block id of same content and pin it until next collection, 0 if none
+    public synchronized long acquire(byte[] fingerprint) {
+        ++logicalNum;
+        Long blockId = blockMap.get(ByteBuffer.wrap(fingerprint));
+        if (null == blockId)
+            return 0;
+
+        ++hitNum;
+        pinnedSet.add(blockId);
+        return blockId;
+    }
+
+    // record newly written block
+    public synchronized void put(byte[] fingerprint, long blockId) {
+        ByteBuffer key = ByteBuffer.wrap(fingerprint);
+        if (blockMap.containsKey(key))
+            return;
+
+        blockMap.put(key, blockId);
+        fingerprintMap.put(blockId, key);
+    }
+
+    // forget block about to be deleted, false if dedup shared it since pins were drained, once removed no
+    // later write can share it
+    public synchronized boolean removeUnlessPinned(long blockId) {
+        if (pinnedSet.contains(blockId))
+            return false;
+
+        ByteBuffer key = fingerprintMap.remove(blockId);
+        if (null != key)
+            blockMap.remove(key);
+        return true;
+    }
+
+    // take pinned blocks for collector to treat as referenced in current cycle
+    public synchronized LongBitmap drainPinned() {
+        LongBitmap drained = pinnedSet;
+        pinnedSet = new LongBitmap();
+        return drained;
+    }
+
+    public synchronized long getLogicalNum() {
+        return logicalNum;
+    }
+
+    public synchronized long getHitNum() {
+        return hitNum;
+    }
+
+    public synchronized long getUniqueNum() {
+        return blockMap.size();
+    }
+
+    // logical blocks written per physical block
+    public synchronized double getDedupRatio() {
+        long storedNum = logicalNum - hitNum;
+        return (storedNum == 0) ? 1.0 : (double) logicalNum / storedNum;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d logical, %d hits, %d unique, ratio %.2f", logicalNum, hitNum, blockMap.size(), getDedupRatio());
+    }
+}
@@ -1,13 +1,8 @@
 package block;
 
-import constant.PathConstants;
 import id.Id;
-import util.ByteUtils;
 import util.ErrorCode;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
 
 public class BlockId implements Id, Serializable {
@@ -16,30 +11,16 @@ public class BlockId implements Id, Serializable {
     private final long id;
 
     public BlockId(long id) {
-        File file = new File(PathConstants.BLOCK_MANAGER_PATH, PathConstants.BLOCK_ID_COUNT);
-        long currentBlockId;
-
-        try {
-            RandomAccessFile input = new RandomAccessFile(file, "r");
-
-            // read long-type block id
-            byte[] bytes = new byte[Long.BYTES];
-            if (input.read(bytes) != bytes.length)
-                throw new ErrorCode(ErrorCode.INVALID_BLOCK_ID);
-            input.close();
-
-            // check id
-            currentBlockId = ByteUtils.bytesToLong(bytes);
-            if (currentBlockId < id)
-                throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_ID, String.valueOf(id));
-
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
-        }
-
         this.id = id;
     }
 
+    // get block id from outside input, check it against leased high-water mark
+    public static BlockId valueOf(long id) {
+        if (id > BlockIdAllocator.getHighWaterMark())
+            throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_ID, String.valueOf(id));
+        return new BlockId(id);
+    }
+
     public long getId() {
         return id;
     }
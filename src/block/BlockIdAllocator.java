@@ -0,0 +1,100 @@
+package block;
+
+import constant.ConfigConstants;
+import constant.PathConstants;
+import util.ByteUtils;
+import util.ErrorCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicLong;
+
+// hand out block ids from ranges leased out of the global id count
+public class BlockIdAllocator {
+    // process-wide copy of persisted high-water mark, -1 before first load
+    private static volatile long highWaterMark = -1;
+
+    private final AtomicLong nextId;
+    private volatile long leaseEnd;
+
+    public BlockIdAllocator() {
+        this.nextId = new AtomicLong(1);
+        this.leaseEnd = 0;  // empty lease, first allocation takes a new range
+    }
+
+    // lease a range of ids by moving the persisted high-water mark forward
+    private static synchronized long leaseRange(int length) {
+        File file = new File(PathConstants.BLOCK_MANAGER_PATH, PathConstants.BLOCK_ID_COUNT);
+
+        try {
+            RandomAccessFile idCount = new RandomAccessFile(file, "rwd");
+
+            // read long-type high-water mark
+            byte[] bytes = new byte[Long.BYTES];
+            if (idCount.read(bytes) != bytes.length)
+                throw new ErrorCode(ErrorCode.INVALID_BLOCK_ID);
+            long start = ByteUtils.bytesToLong(bytes) + 1;
+
+            // ids of unfinished lease are skipped after crash, never reused
+            idCount.seek(0);
+            idCount.write(ByteUtils.longToBytes(start + length - 1));
+            idCount.close();
+
+            highWaterMark = start + length - 1;
+            return start;
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    // largest block id ever leased, ids above it are unknown
+    public static long getHighWaterMark() {
+        if (highWaterMark < 0)
+            loadHighWaterMark();
+        return highWaterMark;
+    }
+
+    private static synchronized void loadHighWaterMark() {
+        if (highWaterMark >= 0)
+            return;
+
+        File file = new File(PathConstants.BLOCK_MANAGER_PATH, PathConstants.BLOCK_ID_COUNT);
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+
+            byte[] bytes = new byte[Long.BYTES];
+            if (input.read(bytes) != bytes.length)
+                throw new ErrorCode(ErrorCode.INVALID_BLOCK_ID);
+            input.close();
+
+            highWaterMark = ByteUtils.bytesToLong(bytes);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    public long allocate() {
+        while (true) {
+            long id = nextId.get();
+            if (id <= leaseEnd) {
+                if (nextId.compareAndSet(id, id + 1))
+                    return id;
+            } else {
+                renewLease(id);
+            }
+        }
+    }
+
+    private synchronized void renewLease(long exhaustedId) {
+        // another thread has renewed the lease
+        if (nextId.get() != exhaustedId || exhaustedId <= leaseEnd)
+            return;
+
+        long start = leaseRange(ConfigConstants.BLOCK_ID_LEASE_SIZE);
+
+        // move next id before lease end so no id of old range passes the check
+        nextId.set(start);
+        leaseEnd = start + ConfigConstants.BLOCK_ID_LEASE_SIZE - 1;
+    }
+}
@@ -9,13 +9,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
-import java.util.HashSet;
 import java.util.Set;
 
 public class BlockManager implements IBlockManager {
     private final BlockManagerId blockManagerId;
 
-    // block manager meta info
+    // block manager meta info, only read to migrate into ownership index
     private static class Meta implements Serializable {
         private static final long serialVersionUID = -8399497222255914720L;
 
@@ -43,8 +42,8 @@ public class BlockManager implements IBlockManager {
         // initialize block manager directory
         init();
 
-        // initialize new meta file with empty block set
-        writeMeta(new Meta(new HashSet<>()));
+        // initialize new ownership index with empty block set
+        openOwnershipIndex().close();
     }
 
     // get existing block manager
@@ -88,20 +87,6 @@ public class BlockManager implements IBlockManager {
         return new BlockManagerId(PathConstants.BLOCK_MANAGER_PREFIX + newBlockManagerIdNum);
     }
 
-    // write serialized meta info into meta file
-    private void writeMeta(Meta meta) {
-        File file = new File(PathConstants.BLOCK_MANAGER_PATH, blockManagerId.getId() + PathConstants.META_SUFFIX);
-
-        try {
-            RandomAccessFile output = new RandomAccessFile(file, "rwd");
-            byte[] metaStr = ByteUtils.objectToSerialize(meta);
-            output.write(metaStr);
-            output.close();
-        } catch (IOException e) {
-            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
-        }
-    }
-
     // get meta object from meta file
     private Meta readMeta() {
         File file = new File(PathConstants.BLOCK_MANAGER_PATH, blockManagerId.getId() + PathConstants.META_SUFFIX);
@@ -120,6 +105,25 @@ public class BlockManager implements IBlockManager {
         }
     }
 
+    // open ownership index, migrate block set of legacy meta file into it
+    BlockOwnershipIndex openOwnershipIndex() {
+        File logFile = new File(PathConstants.BLOCK_MANAGER_PATH, blockManagerId.getId() + PathConstants.OWNERSHIP_LOG_SUFFIX);
+        File metaFile = new File(PathConstants.BLOCK_MANAGER_PATH, blockManagerId.getId() + PathConstants.META_SUFFIX);
+
+        boolean isMigrating = !logFile.exists() && metaFile.exists();
+        BlockOwnershipIndex ownershipIndex = new BlockOwnershipIndex(logFile);
+
+        if (isMigrating) {
+            for (BlockId blockId : readMeta().blockSet)
+                ownershipIndex.add(blockId.getId());
+            ownershipIndex.force();
+            if (!metaFile.delete())
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, metaFile.getPath());
+        }
+
+        return ownershipIndex;
+    }
+
     // initialize block manager directory
     private void init() {
         File dir = new File(PathConstants.BLOCK_MANAGER_PATH, blockManagerId.getId());
@@ -136,10 +140,9 @@ public class BlockManager implements IBlockManager {
 
         BlockId blockId = (BlockId) indexId;
 
-        Meta meta = readMeta();
-        Set<BlockId> blockSet = meta.blockSet;
+        BlockOwnershipIndex ownershipIndex = BlockManagerServer.getServer(blockManagerId).getOwnershipIndex();
 
-        if (!blockSet.contains(blockId))
+        if (!ownershipIndex.contains(blockId.getId()))
             throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_INDEX_ID, String.valueOf(blockId.getId()));
         else
             return new Block(this.blockManagerId, blockId);
@@ -147,13 +150,42 @@ public class BlockManager implements IBlockManager {
 
     @Override
     public Block newBlock(byte[] b) {
+        return newBlock(b, DURABILITY_GROUP);
+    }
+
+    @Override
+    public Block newBlock(byte[] b, int durability) {
         if (null == b)
             throw new ErrorCode(ErrorCode.NULL_NEW_BLOCK_DATA);
-        Block block = new Block(this.blockManagerId, b);
+        if (!IBlockManager.isValidDurability(durability))
+            throw new ErrorCode(ErrorCode.INVALID_DURABILITY, String.valueOf(durability));
+
+        BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
+        BlockOwnershipIndex ownershipIndex = blockManagerServer.getOwnershipIndex();
+        BlockDedupIndex dedupIndex = blockManagerServer.getDedupIndex();
+        BlockWriteAheadLog writeAheadLog = blockManagerServer.getWriteAheadLog();
+
+        // share existing block of same content
+        byte[] bytes = Block.align(b);
+        byte[] fingerprint = null;
+        if (null != dedupIndex) {
+            fingerprint = BlockDedupIndex.fingerprint(bytes);
+            long existingId = dedupIndex.acquire(fingerprint);
+            if (existingId > 0 && ownershipIndex.contains(existingId)) {
+                // existing block may be logged by an async write not flushed yet
+                writeAheadLog.commit(writeAheadLog.getWrittenLsn(), durability);
+                return new Block(this.blockManagerId, new BlockId(existingId));
+            }
+        }
 
-        Meta meta = readMeta();
-        meta.blockSet.add(block.getIndexId());
-        writeMeta(meta);
+        // store write is flushed lazily, logged record makes block durable
+        Block block = new Block(this.blockManagerId, bytes);
+        ownershipIndex.add(block.getIndexId().getId());
+        long lsn = writeAheadLog.logCreate(block.getIndexId().getId(), block.getMetaBytes(), block.getStoredData());
+        blockManagerServer.recordWrite(block);
+        if (null != dedupIndex)
+            dedupIndex.put(fingerprint, block.getIndexId().getId());
+        writeAheadLog.commit(lsn, durability);
 
         return block;
     }
@@ -8,12 +8,13 @@ import java.net.MalformedURLException;
 import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class BlockManagerClient implements IBlockManager {
     /* Client static controller */
-    private static HashMap<BlockManagerRMIId, BlockManagerClient> clientMap = new HashMap<>();
+    private static ConcurrentHashMap<BlockManagerRMIId, BlockManagerClient> clientMap = new ConcurrentHashMap<>();
 
     public static void listServers() {
         if (clientMap.size() != 0) {
@@ -29,10 +30,8 @@ public class BlockManagerClient implements IBlockManager {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_CLIENT_ID);
         }
 
-        if (clientMap.containsKey(blockManagerRMIId)) {
+        if (clientMap.containsKey(blockManagerRMIId) || null != clientMap.putIfAbsent(blockManagerRMIId, new BlockManagerClient(blockManagerRMIId))) {
             throw new ErrorCode(ErrorCode.EXISTING_BLOCK_MANAGER_CLIENT_ID, blockManagerRMIId.getHostStr() + "/" + blockManagerRMIId.getBlockManagerIdStr());
-        } else {
-            clientMap.put(blockManagerRMIId, new BlockManagerClient(blockManagerRMIId));
         }
     }
 
@@ -41,10 +40,8 @@ public class BlockManagerClient implements IBlockManager {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_CLIENT_ID);
         }
 
-        if (!clientMap.containsKey(blockManagerRMIId)) {
-            addClient(blockManagerRMIId);
-        }
-        return clientMap.get(blockManagerRMIId);
+        // concurrent callers share one client
+        return clientMap.computeIfAbsent(blockManagerRMIId, BlockManagerClient::new);
     }
 
     public static void removeClient(BlockManagerRMIId blockManagerRMIId) {
@@ -52,22 +49,20 @@ public class BlockManagerClient implements IBlockManager {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_CLIENT_ID);
         }
 
-        if (!clientMap.containsKey(blockManagerRMIId)) {
+        if (null == clientMap.remove(blockManagerRMIId)) {
             throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_MANAGER_CLIENT_ID, blockManagerRMIId.getHostStr() + "/" + blockManagerRMIId.getBlockManagerIdStr());
-        } else {
-            clientMap.remove(blockManagerRMIId);
         }
     }
 
     private final BlockManagerRMIId blockManagerRMIId;
     private final IBlockManagerRMI blockManagerRMI;
-    private final HashMap<BlockId, Block> blockBuffer;
+    private final ConcurrentHashMap<BlockId, Block> blockBuffer;
 
     public BlockManagerClient(BlockManagerRMIId blockManagerRMIId) {
 
         this.blockManagerRMIId = blockManagerRMIId;
         this.blockManagerRMI = connectHost();
-        this.blockBuffer = new HashMap<>();
+        this.blockBuffer = new ConcurrentHashMap<>();
     }
 
     private IBlockManagerRMI connectHost() {
@@ -86,14 +81,15 @@ public class BlockManagerClient implements IBlockManager {
             return;
 
         // miss
-        if (blockBuffer.size() == ConfigConstants.BLOCK_MANAGER_CLIENT_BUFFER_SIZE) {
+        // concurrent callers may overshoot size by a few blocks, evicting one each
+        if (blockBuffer.size() >= ConfigConstants.BLOCK_MANAGER_CLIENT_BUFFER_SIZE) {
             int random = (int) (Math.random() * blockBuffer.size());
-            for (BlockId blockId : blockBuffer.keySet()) {
-                if (random == 0) {
-                    blockBuffer.remove(blockId);
-                } else {
-                    --random;
-                }
+            Iterator<BlockId> iterator = blockBuffer.keySet().iterator();
+            for (; random > 0 && iterator.hasNext(); --random)
+                iterator.next();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
             }
         }
 
@@ -121,11 +117,16 @@ public class BlockManagerClient implements IBlockManager {
 
     @Override
     public Block newBlock(byte[] b) {
+        return newBlock(b, DURABILITY_GROUP);
+    }
+
+    @Override
+    public Block newBlock(byte[] b, int durability) {
         if (null == b)
             throw new ErrorCode(ErrorCode.NULL_NEW_BLOCK_DATA);
 
         try {
-            Block block = (Block) blockManagerRMI.newBlockRMI(b);
+            Block block = (Block) blockManagerRMI.newBlockRMI(b, durability);
             updateBuffer(block);
             return block;
         } catch (Exception e) {
@@ -23,7 +23,7 @@ public class BlockManagerRMI extends UnicastRemoteObject implements IBlockManage
         BlockManagerId blockManagerId = new BlockManagerId(id.getBlockManagerIdStr());
         IBlockManager blockManagerServer = BlockManagerServer.getServer(blockManagerId);
 
-        BlockId blockId = new BlockId(blockIdNum);
+        BlockId blockId = BlockId.valueOf(blockIdNum);
 
         return blockManagerServer.getBlock(blockId);
     }
@@ -39,6 +39,17 @@ public class BlockManagerRMI extends UnicastRemoteObject implements IBlockManage
         return blockManagerServer.newBlock(b);
     }
 
+    @Override
+    public IBlock newBlockRMI(byte[] b, int durability) {
+        if (null == b)
+            throw new ErrorCode(ErrorCode.NULL_BLOCK_RMI_DATA_ARG);
+
+        BlockManagerId blockManagerId = new BlockManagerId(id.getBlockManagerIdStr());
+        IBlockManager blockManagerServer = BlockManagerServer.getServer(blockManagerId);
+
+        return blockManagerServer.newBlock(b, durability);
+    }
+
     @Override
     public String getPathRMI() {
         BlockManagerId blockManagerId = new BlockManagerId(id.getBlockManagerIdStr());
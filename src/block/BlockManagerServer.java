@@ -6,7 +6,16 @@ import id.Id;
 import util.ByteUtils;
 import util.ErrorCode;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
@@ -15,12 +24,23 @@ import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BlockManagerServer implements IBlockManager {
     /* Server static controller */
-    private static HashMap<BlockManagerId, Boolean> switchMap = new HashMap<>();
-    private static HashMap<BlockManagerId, BlockManagerServer> serverMap = new HashMap<>();
+    // read by RMI threads without locking, lifecycle changes are serialized per manager so managers start in parallel
+    private static ConcurrentHashMap<BlockManagerId, Boolean> switchMap = new ConcurrentHashMap<>();
+    private static ConcurrentHashMap<BlockManagerId, BlockManagerServer> serverMap = new ConcurrentHashMap<>();
+    private static ConcurrentHashMap<BlockManagerId, Object> lifecycleLockMap = new ConcurrentHashMap<>();
+
+    private static Object getLifecycleLock(BlockManagerId blockManagerId) {
+        return lifecycleLockMap.computeIfAbsent(blockManagerId, id -> new Object());
+    }
 
     public static void listServers() {
         if (noServing()) {
@@ -38,51 +58,154 @@ public class BlockManagerServer implements IBlockManager {
         if (null == blockManagerId) {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_SERVER_ID);
         }
-        if (!switchMap.containsKey(blockManagerId) || !serverMap.containsKey(blockManagerId)) {
+        if (!switchMap.containsKey(blockManagerId)) {
             throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_MANAGER_SERVER_ID, blockManagerId.getId());
         }
 
+        synchronized (getLifecycleLock(blockManagerId)) {
+            launchManager(blockManagerId);
+        }
+    }
+
+    private static void launchManager(BlockManagerId blockManagerId) {
         BlockManagerServer blockManagerServer = new BlockManagerServer(blockManagerId);
+        blockManagerServer.blockStore = new BlockStore(blockManagerServer.getPath());
+        blockManagerServer.blockIdAllocator = new BlockIdAllocator();
+        blockManagerServer.ownershipIndex = new BlockManager(blockManagerId).openOwnershipIndex();
+        blockManagerServer.writeAheadLog = new BlockWriteAheadLog(new File(PathConstants.BLOCK_MANAGER_PATH,
+                blockManagerId.getId() + PathConstants.WAL_SUFFIX));
+        blockManagerServer.writeAheadLog.replay(blockManagerServer.blockStore, blockManagerServer.ownershipIndex);
+        if (ConfigConstants.BLOCK_DEDUP)
+            blockManagerServer.dedupIndex = new BlockDedupIndex();
+        blockManagerServer.blockStore.retain(blockManagerServer.ownershipIndex::contains);
+        if (ConfigConstants.BLOCK_CACHE_TRACE)
+            blockManagerServer.openTrace();
+        blockManagerServer.launchCheckpointer();
+        blockManagerServer.blockScrubber = new BlockScrubber(blockManagerServer);
+        blockManagerServer.blockScrubber.start();
         blockManagerServer.launchRMI();
 
+        blockManagerServer.isServing = true;
+        serverMap.put(blockManagerId, blockManagerServer);
         switchMap.replace(blockManagerId, true);
-        serverMap.replace(blockManagerId, blockManagerServer);
+        BlockPlacement.update(serverMap.values());
+        if (ConfigConstants.BLOCK_CACHE_PREWARM)
+            blockManagerServer.launchPrewarm();
     }
 
     public static void stopManager(BlockManagerId blockManagerId) {
         if (null == blockManagerId) {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_SERVER_ID);
         }
-        if (!switchMap.containsKey(blockManagerId) || !serverMap.containsKey(blockManagerId)) {
+        if (!switchMap.containsKey(blockManagerId)) {
             throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_MANAGER_SERVER_ID, blockManagerId.getId());
         }
 
+        synchronized (getLifecycleLock(blockManagerId)) {
+            shutdownManager(blockManagerId);
+        }
+    }
+
+    private static void shutdownManager(BlockManagerId blockManagerId) {
         BlockManagerServer blockManagerServer = serverMap.get(blockManagerId);
-        if (null != blockManagerServer)
+        if (null != blockManagerServer && blockManagerServer.isServing) {
+            // refuse new requests before closing storage under them
+            blockManagerServer.isServing = false;
+            switchMap.replace(blockManagerId, false);
+            BlockPlacement.update(serverMap.values());
+            blockManagerServer.awaitRequests();
+            blockManagerServer.terminatePrewarm();
+            blockManagerServer.blockScrubber.stop();
+            blockManagerServer.terminateCheckpointer();
+            blockManagerServer.writeAheadLog.checkpoint(blockManagerServer.blockStore, blockManagerServer.ownershipIndex);
+            // next start loads indexes and warm cache instead of scanning segments
+            blockManagerServer.checkpointIndexes();
+            blockManagerServer.writeAheadLog.close();
+            blockManagerServer.blockStore.close();
+            blockManagerServer.ownershipIndex.close();
+            blockManagerServer.closeTrace();
             blockManagerServer.terminateRMI();
+        }
 
         switchMap.replace(blockManagerId, false);
     }
 
     public static void restartManager(BlockManagerId blockManagerId) throws ErrorCode {
-        try {
-            stopManager(blockManagerId);
-            startManager(blockManagerId);
-        } catch (Exception e) {
-            stopManager(blockManagerId);
-            throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_MANAGER_SERVER_EXCEPTION, blockManagerId.getId());
+        if (null == blockManagerId) {
+            throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_SERVER_ID);
+        }
+
+        synchronized (getLifecycleLock(blockManagerId)) {
+            try {
+                stopManager(blockManagerId);
+                startManager(blockManagerId);
+            } catch (Exception e) {
+                stopManager(blockManagerId);
+                throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_MANAGER_SERVER_EXCEPTION, blockManagerId.getId());
+            }
         }
     }
 
+    // managers load their indexes independently, so start them in parallel
     public static void startAllManager() {
-        for (BlockManagerId blockManagerId : switchMap.keySet()) {
-            startManager(blockManagerId);
-        }
+        switchMap.keySet().parallelStream().forEach(BlockManagerServer::startManager);
     }
 
     public static void stopAllManager() {
-        for (BlockManagerId blockManagerId : switchMap.keySet()) {
-            stopManager(blockManagerId);
+        switchMap.keySet().parallelStream().forEach(BlockManagerServer::stopManager);
+    }
+
+    public static void printDedupStats() {
+        if (!ConfigConstants.BLOCK_DEDUP)
+            return;
+
+        System.out.println("Block dedup stats:");
+        for (BlockManagerId id : switchMap.keySet()) {
+            BlockManagerServer blockManagerServer = serverMap.get(id);
+            if (null != blockManagerServer && null != blockManagerServer.dedupIndex)
+                System.out.println(id.getId() + " : " + blockManagerServer.dedupIndex);
+        }
+    }
+
+    public static void printCapacityStats() {
+        System.out.println("Block capacity stats:");
+        for (BlockManagerId id : switchMap.keySet()) {
+            BlockManagerServer blockManagerServer = serverMap.get(id);
+            if (null == blockManagerServer || null == blockManagerServer.blockStore)
+                continue;
+
+            long rawBytes = blockManagerServer.rawBytes.get();
+            long storedBytes = blockManagerServer.storedBytes.get();
+            double ratio = (storedBytes == 0) ? 1.0 : (double) rawBytes / storedBytes;
+            System.out.println(String.format("%s : %d raw bytes, %d stored bytes, ratio %.2f written since start",
+                    id.getId(), rawBytes, storedBytes, ratio));
+        }
+    }
+
+    public static void printLogStats() {
+        System.out.println("Block write-ahead log stats:");
+        for (BlockManagerId id : switchMap.keySet()) {
+            BlockManagerServer blockManagerServer = serverMap.get(id);
+            if (null != blockManagerServer && null != blockManagerServer.writeAheadLog)
+                System.out.println(id.getId() + " : " + blockManagerServer.writeAheadLog);
+        }
+    }
+
+    public static void printCacheStats() {
+        System.out.println("Block cache stats:");
+        for (BlockManagerId id : switchMap.keySet()) {
+            BlockManagerServer blockManagerServer = serverMap.get(id);
+            if (null != blockManagerServer)
+                System.out.println(id.getId() + " : " + blockManagerServer.blockCache);
+        }
+    }
+
+    public static void printScrubStats() {
+        System.out.println("Block scrubber stats:");
+        for (BlockManagerId id : switchMap.keySet()) {
+            BlockManagerServer blockManagerServer = serverMap.get(id);
+            if (null != blockManagerServer && null != blockManagerServer.blockScrubber)
+                System.out.println(id.getId() + " : " + blockManagerServer.blockScrubber);
         }
     }
 
@@ -115,7 +238,7 @@ public class BlockManagerServer implements IBlockManager {
         return count;
     }
 
-    public static void addServer(BlockManagerId blockManagerId) {
+    public static synchronized void addServer(BlockManagerId blockManagerId) {
         if (null == blockManagerId) {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_SERVER_ID);
         }
@@ -124,10 +247,13 @@ public class BlockManagerServer implements IBlockManager {
             throw new ErrorCode(ErrorCode.EXISTING_BLOCK_MANAGER_SERVER_ID, blockManagerId.getId());
         } else {
             switchMap.put(blockManagerId, false);
-            serverMap.put(blockManagerId, null);
         }
     }
 
+    public static Set<BlockManagerId> getManagerIds() {
+        return new HashSet<>(switchMap.keySet());
+    }
+
     public static BlockManagerServer getServer(BlockManagerId blockManagerId) {
         if (null == blockManagerId) {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_SERVER_ID);
@@ -141,7 +267,7 @@ public class BlockManagerServer implements IBlockManager {
     }
 
     /* Initialize local block managers */
-    public static void init() {
+    public static synchronized void init() {
         File blockManagerDir = new File(PathConstants.BLOCK_MANAGER_PATH);
         if (blockManagerDir.exists()) {
             for (int i = 1; i <= ConfigConstants.BLOCK_MANAGER_NUM; ++i) {
@@ -178,33 +304,41 @@ public class BlockManagerServer implements IBlockManager {
     }
 
     /* static helper method */
-    // randomly choose an serving block manager
+    // choose a serving block manager by placement policy
     public static BlockManager getRandomServingBlockManager() {
-        if (noServing()) {
-            throw new ErrorCode(ErrorCode.BLOCK_MANAGER_NO_SERVING);
-        }
-
         if (serving() < ConfigConstants.DUPLICATION_NUM) {
             throw new ErrorCode(ErrorCode.LACKING_SERVER_FOR_DUPLICATION);
         }
 
-        BlockManagerId randomBlockManagerId;
-        do {
-            long randomBlockManagerIdNum = (long) (Math.random() * switchMap.size()) + 1; // + 1 for id number starts from 1
-            randomBlockManagerId = new BlockManagerId(PathConstants.BLOCK_MANAGER_PREFIX + randomBlockManagerIdNum);
-        } while (!isServing(randomBlockManagerId));
-        return new BlockManager(randomBlockManagerId);
+        return new BlockManager(BlockPlacement.choose(Collections.emptySet()));
     }
 
     /* Server object */
     private final BlockManagerId blockManagerId;
     private IBlockManagerRMI blockManagerRMI;
-    private final HashMap<BlockId, Block> blockCache;
+    private BlockStore blockStore;
+    private BlockIdAllocator blockIdAllocator;
+    private BlockOwnershipIndex ownershipIndex;
+    private BlockDedupIndex dedupIndex;
+    private BlockWriteAheadLog writeAheadLog;
+    private Thread checkpointThread;
+    private long lastIndexCheckpoint;
+    private Thread prewarmThread;
+    private BlockScrubber blockScrubber;
+    private volatile boolean isServing;     // checked on every request instead of looking up switch map
+    private final AtomicInteger pendingRequests = new AtomicInteger();     // requests touching storage, drained by stop
+    private BufferedWriter traceWriter;     // block access trace for cache simulator, null if disabled
+    private volatile boolean isCheckpointing;
+
+    // bytes of blocks written since start, before and after compression
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final BlockCache blockCache;
 
     // create new block manager server
     public BlockManagerServer() {
         this.blockManagerId = new BlockManager().getManagerId();
-        this.blockCache = new HashMap<>();
+        this.blockCache = newBlockCache();
     }
 
     // get existing block manager server
@@ -213,26 +347,58 @@ public class BlockManagerServer implements IBlockManager {
             throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_ARGUMENT);
 
         this.blockManagerId = new BlockManager(blockManagerId).getManagerId();
-        this.blockCache = new HashMap<>();
+        this.blockCache = newBlockCache();
     }
 
+    private static BlockCache newBlockCache() {
+        return new BlockCache(ConfigConstants.BLOCK_MANAGER_SERVER_CACHE_SIZE, ConfigConstants.BLOCK_CACHE_SLAB_SIZE,
+                ConfigConstants.BLOCK_SIZE, ConfigConstants.BLOCK_MAX_SIZE, ConfigConstants.BLOCK_CACHE_POLICY);
+    }
+
+    // keep stored record of block off-heap
     private void updateCache(Block block) {
         // hit
-        if (blockCache.containsKey(block.getIndexId()))
+        if (blockCache.contains(block.getIndexId().getId()))
             return;
 
-        // miss
-        if (blockCache.size() == ConfigConstants.BLOCK_MANAGER_SERVER_CACHE_SIZE) {
-            int random = (int) (Math.random() * blockCache.size());
-            for (BlockId blockId : blockCache.keySet()) {
-                if (random == 0) {
-                    blockCache.remove(blockId);
-                } else {
-                    --random;
-                }
+        // miss, cache evicts by itself, blocks loaded from disk are verified first so cache hits need not be
+        block.verify();
+        blockCache.put(block.getIndexId().getId(), block.getMetaBytes(), block.getStoredData());
+    }
+
+    // append block accesses to trace file of this manager
+    private void openTrace() {
+        File file = new File(PathConstants.BLOCK_MANAGER_PATH, blockManagerId.getId() + PathConstants.CACHE_TRACE_SUFFIX);
+        try {
+            traceWriter = new BufferedWriter(new FileWriter(file, true));
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    private void trace(BlockId blockId) {
+        if (null == traceWriter)
+            return;
+
+        synchronized (traceWriter) {
+            try {
+                traceWriter.write(Long.toString(blockId.getId()));
+                traceWriter.newLine();
+            } catch (IOException e) {
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, blockManagerId.getId() + PathConstants.CACHE_TRACE_SUFFIX);
             }
         }
-        blockCache.put(block.getIndexId(), block);
+    }
+
+    private void closeTrace() {
+        if (null == traceWriter)
+            return;
+
+        try {
+            traceWriter.close();
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, blockManagerId.getId() + PathConstants.CACHE_TRACE_SUFFIX);
+        }
     }
 
     // launch block manager RMI service for other clients
@@ -249,6 +415,107 @@ public class BlockManagerServer implements IBlockManager {
         }
     }
 
+    // flush async writes and checkpoint write-ahead log in background
+    private void launchCheckpointer() {
+        isCheckpointing = true;
+        checkpointThread = new Thread(() -> {
+            // stopped by flag, interrupt would close channels in the middle of a flush
+            while (isCheckpointing) {
+                try {
+                    Thread.sleep(ConfigConstants.BLOCK_WAL_FLUSH_INTERVAL);
+                    if (writeAheadLog.needCheckpoint())
+                        writeAheadLog.checkpoint(blockStore, ownershipIndex);
+                    else
+                        writeAheadLog.flushAsync();
+                    if (System.currentTimeMillis() - lastIndexCheckpoint >= ConfigConstants.BLOCK_INDEX_CHECKPOINT_INTERVAL)
+                        checkpointIndexes();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ErrorCode e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }, "block-checkpointer-" + blockManagerId.getId());
+        checkpointThread.setDaemon(true);
+        lastIndexCheckpoint = System.currentTimeMillis();
+        checkpointThread.start();
+    }
+
+    private void terminateCheckpointer() {
+        isCheckpointing = false;
+        try {
+            checkpointThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // persist store index, ownership bitmap and cached ids so restart neither scans segments nor starts cold
+    private void checkpointIndexes() {
+        lastIndexCheckpoint = System.currentTimeMillis();
+        blockStore.writeCheckpoint();
+        ownershipIndex.compact();
+        writeWarmList();
+    }
+
+    private File warmListFile() {
+        return new File(PathConstants.BLOCK_MANAGER_PATH, blockManagerId.getId() + PathConstants.WARM_LIST_SUFFIX);
+    }
+
+    private void writeWarmList() {
+        File file = warmListFile();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            IOException[] exception = new IOException[1];
+            blockCache.forEachId(blockId -> {
+                try {
+                    output.writeLong(blockId);
+                } catch (IOException e) {
+                    exception[0] = e;
+                }
+            });
+            if (null != exception[0])
+                throw exception[0];
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    // reload blocks of warm list into cache while already serving, a damaged list only warms less
+    private void launchPrewarm() {
+        File file = warmListFile();
+        if (!file.exists())
+            return;
+
+        prewarmThread = new Thread(() -> {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (isServing) {
+                    long blockId = input.readLong();
+                    if (blockId > 0 && ownershipIndex.contains(blockId) && blockStore.contains(blockId))
+                        updateCache(new Block(blockManagerId, new BlockId(blockId)));
+                }
+            } catch (EOFException e) {
+                // whole list loaded
+            } catch (IOException | ErrorCode e) {
+                System.out.println(blockManagerId.getId() + ": prewarm stopped, " + e.getMessage());
+            }
+        }, "block-prewarm-" + blockManagerId.getId());
+        prewarmThread.setDaemon(true);
+        prewarmThread.setPriority(Thread.MIN_PRIORITY);
+        prewarmThread.start();
+    }
+
+    private void terminatePrewarm() {
+        if (null == prewarmThread)
+            return;
+
+        try {
+            prewarmThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        prewarmThread = null;
+    }
+
     public void terminateRMI() {
         String bindName = ConfigConstants.RMI_MANAGER_REGISTRY_PREFIX + ConfigConstants.RMI_SERVER_HOST + ":" + ConfigConstants.RMI_SERVER_PORT + "/" + blockManagerId.getId();
         try {
@@ -263,45 +530,192 @@ public class BlockManagerServer implements IBlockManager {
 
     @Override
     public Block getBlock(Id indexId) {
-        if (!BlockManagerServer.isServing(blockManagerId)) {
-            throw new ErrorCode(ErrorCode.BLOCK_MANAGER_NOT_SERVING, blockManagerId.getId());
+        // hit, record is copied out of cache since block may be sent over RMI, local files read through readBlock
+        if (indexId instanceof BlockId) {
+            BlockId blockId = (BlockId) indexId;
+            Block block;
+            beginRequest();
+            try {
+                trace(blockId);
+                block = blockCache.get(blockId.getId(),
+                        (metaBuffer, dataBuffer) -> new Block(blockManagerId, blockId, metaBuffer, dataBuffer));
+            } finally {
+                endRequest();
+            }
+            if (null != block)
+                return block;
         }
 
+        return loadBlock(indexId);
+    }
+
+    // data of block for files of this process, a cache hit is decoded straight from slab views with no block
+    // object or stored data copy on heap
+    public byte[] readBlock(BlockId blockId) {
         // hit
-        if (blockCache.containsKey(indexId))
-            return blockCache.get(indexId);
+        byte[] data;
+        beginRequest();
+        try {
+            trace(blockId);
+            data = blockCache.get(blockId.getId(), Block::decode);
+        } finally {
+            endRequest();
+        }
+        if (null != data)
+            return data;
 
-        // miss
+        return loadBlock(blockId).read();
+    }
+
+    // copy part of block into given array, raw cached data with no heap copy of it, access is traced and
+    // counted once whether it hits or not
+    public void readPart(BlockId blockId, int startIndex, byte[] dest, int destOffset, int length) {
+        Boolean isCopied;
+        beginRequest();
+        try {
+            trace(blockId);
+            isCopied = blockCache.get(blockId.getId(),
+                    (metaBuffer, dataBuffer) -> Block.copyPart(metaBuffer, dataBuffer, startIndex, dest, destOffset, length));
+        } finally {
+            endRequest();
+        }
+        if (null != isCopied)
+            return;
+
+        byte[] data = loadBlock(blockId).read();
+        System.arraycopy(data, startIndex, dest, destOffset, Math.min(length, data.length - startIndex));
+    }
+
+    // miss, load block from store and offer it to cache
+    private Block loadBlock(Id indexId) {
+        // restart waits for pending requests, so it is called once this one is done
+        Block block = null;
+        beginRequest();
         try {
             BlockManager blockManager = new BlockManager(blockManagerId);
-            Block block = blockManager.getBlock(indexId);
+            block = blockManager.getBlock(indexId);
             updateCache(block);
-            return block;
         } catch (ErrorCode errorCode) {
             throw errorCode;
         } catch (Exception e) {
+            // restarted below
+        } finally {
+            endRequest();
+        }
+
+        if (null == block) {
             restartManager(blockManagerId);
             throw new ErrorCode(ErrorCode.RESTART_BLOCK_MANAGER_SERVER_EXCEPTION, blockManagerId.getId());
         }
+        return block;
     }
 
     @Override
     public Block newBlock(byte[] b) {
-        if (!BlockManagerServer.isServing(blockManagerId)) {
-            throw new ErrorCode(ErrorCode.BLOCK_MANAGER_NOT_SERVING, blockManagerId.getId());
-        }
+        return newBlock(b, DURABILITY_GROUP);
+    }
 
+    @Override
+    public Block newBlock(byte[] b, int durability) {
+        // stop waits for pending requests, so it is called once this one is done
+        Block block = null;
+        beginRequest();
         try {
             BlockManager blockManager = new BlockManager(blockManagerId);
-            Block block = blockManager.newBlock(b);
+            block = blockManager.newBlock(b, durability);
+            trace(block.getIndexId());
             updateCache(block);
-            return block;
         } catch (ErrorCode errorCode) {
             throw errorCode;
         } catch (Exception e) {
+            // stopped below
+        } finally {
+            endRequest();
+        }
+
+        if (null == block) {
             stopManager(blockManagerId);
             throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_MANAGER_SERVER_EXCEPTION, blockManagerId.getId());
         }
+        return block;
+    }
+
+    // remove unreferenced block from ownership and storage, false if dedup shared it meanwhile so it is kept
+    public boolean deleteBlock(BlockId blockId) {
+        beginRequest();
+        try {
+            // pin check and fingerprint removal are atomic with dedup lookups
+            if (null != dedupIndex && !dedupIndex.removeUnlessPinned(blockId.getId()))
+                return false;
+
+            blockCache.remove(blockId.getId());
+            ownershipIndex.remove(blockId.getId());
+            blockStore.delete(blockId.getId());
+            // not committed, a lost removal only resurrects a garbage block for next collection
+            writeAheadLog.logRemove(blockId.getId());
+            return true;
+        } finally {
+            endRequest();
+        }
+    }
+
+    // reclaim space of at most one sealed segment with too few live bytes
+    public void compactStore() {
+        beginRequest();
+        try {
+            int segment = blockStore.findCompactSegment();
+            if (segment >= 0)
+                blockStore.compact(segment);
+        } finally {
+            endRequest();
+        }
+    }
+
+    // rewrite damaged record of owned block with healthy data from another copy, references to block stay valid
+    public void repairBlock(BlockId blockId, byte[] data) {
+        beginRequest();
+        try {
+            if (!ownershipIndex.contains(blockId.getId()))
+                throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_INDEX_ID, String.valueOf(blockId.getId()));
+
+            Block block = new Block(blockManagerId, blockId, data);
+            long lsn = writeAheadLog.logCreate(blockId.getId(), block.getMetaBytes(), block.getStoredData());
+            blockCache.remove(blockId.getId());
+            writeAheadLog.commit(lsn, DURABILITY_SYNC);
+        } finally {
+            endRequest();
+        }
+    }
+
+    // count request before checking serving flag, so stop either refuses it or waits for it
+    private void beginRequest() {
+        pendingRequests.incrementAndGet();
+        if (!isServing) {
+            endRequest();
+            throw new ErrorCode(ErrorCode.BLOCK_MANAGER_NOT_SERVING, blockManagerId.getId());
+        }
+    }
+
+    private void endRequest() {
+        if (pendingRequests.decrementAndGet() == 0 && !isServing) {
+            synchronized (pendingRequests) {
+                pendingRequests.notifyAll();
+            }
+        }
+    }
+
+    // wait for requests that passed serving check before storage is closed under them
+    private void awaitRequests() {
+        synchronized (pendingRequests) {
+            while (pendingRequests.get() > 0) {
+                try {
+                    pendingRequests.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
     }
 
     @Override
@@ -313,4 +727,51 @@ public class BlockManagerServer implements IBlockManager {
     public BlockManagerId getManagerId() {
         return blockManagerId;
     }
+
+    public BlockStore getBlockStore() {
+        return blockStore;
+    }
+
+    public BlockIdAllocator getBlockIdAllocator() {
+        return blockIdAllocator;
+    }
+
+    public BlockOwnershipIndex getOwnershipIndex() {
+        return ownershipIndex;
+    }
+
+    public BlockWriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    public BlockScrubber getScrubber() {
+        return blockScrubber;
+    }
+
+    boolean isServing() {
+        return isServing;
+    }
+
+    // whether block is read from cache, such reads are not worth hedging
+    public boolean isCached(BlockId blockId) {
+        return isServing && blockCache.contains(blockId.getId());
+    }
+
+    int getPendingRequests() {
+        return pendingRequests.get();
+    }
+
+    long getStoredBytes() {
+        return blockStore.getLiveBytes();
+    }
+
+    void recordWrite(Block block) {
+        rawBytes.addAndGet(block.blockSize());
+        storedBytes.addAndGet(block.storedSize());
+    }
+
+    // null when dedup is disabled
+    public BlockDedupIndex getDedupIndex() {
+        return dedupIndex;
+    }
 }
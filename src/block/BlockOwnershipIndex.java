@@ -0,0 +1,259 @@
+package block;
+
+import constant.ConfigConstants;
+import constant.PathConstants;
+import util.ErrorCode;
+import util.LongBitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32C;
+
+// owned block ids of one block manager, persisted as append-only id log holding every change, with a bitmap
+// checkpoint of the ids after the first entries of the log so startup replays only the rest
+public class BlockOwnershipIndex {
+    // log entry is a block id, negative id records removal
+    private final static int ENTRY_SIZE = Long.BYTES;
+
+    private final File logFile;
+    private final File checkpointFile;
+    private LongBitmap blockSet;
+    private FileChannel logChannel;
+    private long logEntryNum;
+    private long checkpointEntryNum;     // log entries covered by checkpoint
+
+    public BlockOwnershipIndex(File logFile) {
+        if (null == logFile)
+            throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_ARGUMENT);
+
+        this.logFile = logFile;
+        this.checkpointFile = new File(logFile.getPath() + PathConstants.CHECKPOINT_SUFFIX);
+        this.logChannel = openLog();
+        this.blockSet = new LongBitmap();
+        this.checkpointEntryNum = 0;
+
+        // damaged checkpoint is skipped, whole log rebuilds same ids
+        try {
+            loadCheckpoint();
+        } catch (ErrorCode e) {
+            if (e.getErrorCode() != ErrorCode.INDEX_CHECKPOINT_INVALID)
+                throw e;
+            System.out.println(e.getMessage() + ", rebuilding from " + logFile.getPath());
+            blockSet = new LongBitmap();
+            checkpointEntryNum = 0;
+        }
+
+        replay();
+    }
+
+    // load id set of last checkpoint and log entries it covers, empty before first one
+    private void loadCheckpoint() {
+        if (!checkpointFile.exists())
+            return;
+
+        try (FileChannel channel = FileChannel.open(checkpointFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int length = (int) channel.size() - Integer.BYTES;
+            if (length < 0)
+                throw new ErrorCode(ErrorCode.INDEX_CHECKPOINT_INVALID, checkpointFile.getPath());
+            CRC32C crc32c = new CRC32C();
+            crc32c.update(buffer.slice(0, length));
+            if ((int) crc32c.getValue() != buffer.getInt(length))
+                throw new ErrorCode(ErrorCode.INDEX_CHECKPOINT_INVALID, checkpointFile.getPath());
+
+            LongBitmap checkpointSet = LongBitmap.readFrom(buffer);
+            // checkpoints of truncated logs hold no entry count
+            long entryNum = (buffer.position() == length) ? 0 : buffer.getLong();
+            if (buffer.position() != length || entryNum < 0 || entryNum > logChannel.size() / ENTRY_SIZE)
+                throw new ErrorCode(ErrorCode.INDEX_CHECKPOINT_INVALID, checkpointFile.getPath());
+
+            blockSet = checkpointSet;
+            checkpointEntryNum = entryNum;
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, checkpointFile.getPath());
+        } catch (RuntimeException e) {
+            if (e instanceof ErrorCode)
+                throw e;
+            throw new ErrorCode(ErrorCode.INDEX_CHECKPOINT_INVALID, checkpointFile.getPath());
+        }
+    }
+
+    private FileChannel openLog() {
+        try {
+            return new RandomAccessFile(logFile, "rw").getChannel();
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+    }
+
+    // rebuild in-memory id set from log entries after checkpoint
+    private void replay() {
+        try {
+            long length = logChannel.size() / ENTRY_SIZE * ENTRY_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(ConfigConstants.BLOCK_OWNERSHIP_LOG_BUFFER_SIZE);
+
+            long pos = checkpointEntryNum * ENTRY_SIZE;
+            logEntryNum = checkpointEntryNum;
+            while (pos < length) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), length - pos));
+                while (buffer.hasRemaining())
+                    logChannel.read(buffer, pos + buffer.position());
+                buffer.flip();
+
+                while (buffer.hasRemaining()) {
+                    long entry = buffer.getLong();
+                    if (entry > 0)
+                        blockSet.add(entry);
+                    else
+                        blockSet.remove(-entry);
+                    ++logEntryNum;
+                }
+                pos += buffer.limit();
+            }
+
+            // drop torn entry at the tail
+            logChannel.truncate(length);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+    }
+
+    // entry is durable after force, changes are also kept in write-ahead log until then
+    private void append(long entry) {
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+        buffer.putLong(entry);
+        buffer.flip();
+
+        try {
+            long pos = logEntryNum * ENTRY_SIZE;
+            while (buffer.hasRemaining())
+                pos += logChannel.write(buffer, pos);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+        ++logEntryNum;
+    }
+
+    public synchronized boolean contains(long blockId) {
+        return blockSet.contains(blockId);
+    }
+
+    public synchronized void add(long blockId) {
+        if (blockSet.add(blockId))
+            append(blockId);
+    }
+
+    public synchronized void remove(long blockId) {
+        if (blockSet.remove(blockId)) {
+            append(-blockId);
+            if (isLogBloated())
+                rewriteLog();
+        }
+    }
+
+    // log mostly holds removed ids
+    private boolean isLogBloated() {
+        return logEntryNum > ConfigConstants.BLOCK_OWNERSHIP_COMPACT_THRESHOLD && logEntryNum > 2 * blockSet.size();
+    }
+
+    public synchronized void forEach(LongConsumer consumer) {
+        blockSet.forEach(consumer);
+    }
+
+    public synchronized long size() {
+        return blockSet.size();
+    }
+
+    // write current ids as bitmap checkpoint of log so far, log is rewritten instead once it mostly holds removals
+    public synchronized void compact() {
+        if (isLogBloated())
+            rewriteLog();
+        else if (logEntryNum > checkpointEntryNum)
+            writeCheckpoint(logEntryNum);
+    }
+
+    // checkpoint of current ids covering given log entries, replaced atomically
+    private void writeCheckpoint(long entryNum) {
+        ByteBuffer buffer = ByteBuffer.allocate(blockSet.serializedSize() + Long.BYTES + Integer.BYTES);
+        blockSet.writeTo(buffer);
+        buffer.putLong(entryNum);
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc32c.getValue());
+        buffer.flip();
+
+        File tempFile = new File(checkpointFile.getPath() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                tempChannel.write(buffer);
+            tempChannel.force(false);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, tempFile.getPath());
+        }
+
+        try {
+            // entries must be durable before checkpoint skips them
+            logChannel.force(false);
+            Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, checkpointFile.getPath());
+        }
+        checkpointEntryNum = entryNum;
+    }
+
+    // replace log by one add entry per current id; checkpoint covering no entries goes first, since replaying
+    // either whole log over current ids gives current ids, a crash at any step loses nothing
+    private void rewriteLog() {
+        writeCheckpoint(0);
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) blockSet.size() * ENTRY_SIZE);
+        blockSet.forEach(buffer::putLong);
+        buffer.flip();
+
+        File tempFile = new File(logFile.getPath() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                tempChannel.write(buffer);
+            tempChannel.force(false);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, tempFile.getPath());
+        }
+
+        try {
+            logChannel.close();
+            Files.move(tempFile.toPath(), logFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+        logChannel = openLog();
+        logEntryNum = blockSet.size();
+        writeCheckpoint(logEntryNum);
+    }
+
+    public synchronized void force() {
+        try {
+            logChannel.force(false);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            logChannel.close();
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+    }
+}
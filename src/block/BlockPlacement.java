@@ -0,0 +1,74 @@
+package block;
+
+import constant.ConfigConstants;
+import util.ErrorCode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+// chooses block managers for new blocks by power of two choices, two random serving managers are compared by
+// free capacity and requests in progress, so a placement costs O(1) however many managers there are
+public class BlockPlacement {
+    // random samples tried before scanning, excluded managers are few compared to serving ones
+    private final static int SAMPLE_ATTEMPTS = 8;
+
+    // serving managers, replaced as a whole when one starts or stops so placements read it without locking
+    private static volatile BlockManagerServer[] servingServers = new BlockManagerServer[0];
+
+    static synchronized void update(Collection<BlockManagerServer> servers) {
+        List<BlockManagerServer> serving = new ArrayList<>();
+        for (BlockManagerServer server : servers) {
+            if (server.isServing())
+                serving.add(server);
+        }
+        servingServers = serving.toArray(new BlockManagerServer[0]);
+    }
+
+    // choose serving block manager not in given set, e.g. managers already holding a replica or stripe block
+    public static BlockManagerId choose(Set<BlockManagerId> excluded) {
+        BlockManagerServer[] servers = servingServers;
+        if (servers.length == 0)
+            throw new ErrorCode(ErrorCode.BLOCK_MANAGER_NO_SERVING);
+
+        BlockManagerServer first = sample(servers, excluded, null);
+        if (null == first)
+            throw new ErrorCode(ErrorCode.LACKING_SERVER_FOR_DUPLICATION);
+        BlockManagerServer second = sample(servers, excluded, first);
+        if (null == second || score(first) >= score(second))
+            return first.getManagerId();
+        return second.getManagerId();
+    }
+
+    // random candidate other than given one, null if there is none
+    private static BlockManagerServer sample(BlockManagerServer[] servers, Set<BlockManagerId> excluded, BlockManagerServer other) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < SAMPLE_ATTEMPTS; ++i) {
+            BlockManagerServer server = servers[random.nextInt(servers.length)];
+            if (isCandidate(server, excluded, other))
+                return server;
+        }
+
+        // most managers are excluded or stopped meanwhile, scan once instead of retrying
+        int start = random.nextInt(servers.length);
+        for (int i = 0; i < servers.length; ++i) {
+            BlockManagerServer server = servers[(start + i) % servers.length];
+            if (isCandidate(server, excluded, other))
+                return server;
+        }
+        return null;
+    }
+
+    private static boolean isCandidate(BlockManagerServer server, Set<BlockManagerId> excluded, BlockManagerServer other) {
+        return server != other && server.isServing() && !excluded.contains(server.getManagerId());
+    }
+
+    // free share of capacity, divided among requests in progress
+    static double score(BlockManagerServer server) {
+        double freeShare = Math.max(0, ConfigConstants.BLOCK_MANAGER_CAPACITY - server.getStoredBytes())
+                / (double) ConfigConstants.BLOCK_MANAGER_CAPACITY;
+        return freeShare / (1 + server.getPendingRequests());
+    }
+}
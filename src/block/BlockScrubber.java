@@ -0,0 +1,169 @@
+package block;
+
+import constant.ConfigConstants;
+import util.ErrorCode;
+import util.LongBitmap;
+
+// background checker of owned blocks of one block manager, reads records straight from store at a throttled
+// byte rate so that cache and foreground requests are not disturbed, corrupt blocks are handed to repairer
+public class BlockScrubber {
+    private static volatile IBlockRepairer repairer = null;
+
+    public static void setRepairer(IBlockRepairer blockRepairer) {
+        repairer = blockRepairer;
+    }
+
+    private final BlockManagerServer blockManagerServer;
+    private final Object waitLock = new Object();
+    private final Object passLock = new Object();
+    private Thread scrubThread;
+    private volatile boolean isStopped = true;
+
+    private long passCount = 0;
+    private long scannedCount = 0;
+    private long scannedBytes = 0;
+    private long corruptCount = 0;
+    private long repairedCount = 0;
+    private long lastPassMillis = 0;
+    private long lastPassBytes = 0;
+
+    public BlockScrubber(BlockManagerServer blockManagerServer) {
+        this.blockManagerServer = blockManagerServer;
+    }
+
+    public void start() {
+        isStopped = false;
+        scrubThread = new Thread(() -> {
+            while (!isStopped) {
+                synchronized (waitLock) {
+                    try {
+                        waitLock.wait(ConfigConstants.BLOCK_SCRUB_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                try {
+                    runPass();
+                } catch (ErrorCode e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }, "block-scrubber-" + blockManagerServer.getManagerId().getId());
+        scrubThread.setDaemon(true);
+        scrubThread.setPriority(Thread.MIN_PRIORITY);
+        scrubThread.start();
+    }
+
+    // stop thread and wait for pass in progress, before storage is closed
+    public void stop() {
+        isStopped = true;
+        synchronized (waitLock) {
+            waitLock.notifyAll();
+        }
+        try {
+            scrubThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // wait for pass started by command, it has seen stop flag
+        synchronized (passLock) {
+            scrubThread = null;
+        }
+    }
+
+    // check every owned block once, then repair corrupt ones
+    public void runPass() {
+        synchronized (passLock) {
+            if (isStopped)
+                return;
+
+            BlockManagerId blockManagerId = blockManagerServer.getManagerId();
+            BlockOwnershipIndex ownershipIndex = blockManagerServer.getOwnershipIndex();
+            BlockStore blockStore = blockManagerServer.getBlockStore();
+
+            // snapshot ids, ownership index is locked while visited
+            LongBitmap ownedSet = new LongBitmap();
+            ownershipIndex.forEach(ownedSet::add);
+
+            LongBitmap corruptSet = new LongBitmap();
+            long startNanos = System.nanoTime();
+            long[] passBytes = new long[1];
+
+            ownedSet.forEach(blockId -> {
+                if (isStopped)
+                    return;
+
+                try {
+                    Block block = new Block(blockManagerId, new BlockId(blockId));
+                    block.verify();
+                    passBytes[0] += block.storedSize();
+                } catch (Exception e) {
+                    // blocks deleted or rewritten meanwhile are not corrupt
+                    if (ownershipIndex.contains(blockId) && blockStore.contains(blockId) && !isReadable(blockId))
+                        addCorrupt(corruptSet, blockId);
+                }
+                synchronized (this) {
+                    ++scannedCount;
+                }
+                throttle(startNanos, passBytes[0]);
+            });
+
+            if (corruptSet.size() > 0 && null != repairer && !isStopped) {
+                long corruptNum = corruptSet.size();
+                repairer.repair(blockManagerId, corruptSet);
+                synchronized (this) {
+                    repairedCount += corruptNum - corruptSet.size();
+                }
+                if (corruptSet.size() > 0)
+                    System.out.println(blockManagerId.getId() + ": " + corruptSet.size() + " corrupt blocks not repaired");
+            }
+            if (null != repairer && !isStopped)
+                repairer.repairUnderReplicated();
+
+            synchronized (this) {
+                ++passCount;
+                scannedBytes += passBytes[0];
+                lastPassMillis = (System.nanoTime() - startNanos) / 1000000;
+                lastPassBytes = passBytes[0];
+            }
+        }
+    }
+
+    // read again, failure may come from a record moved by compaction during first read
+    private boolean isReadable(long blockId) {
+        try {
+            new Block(blockManagerServer.getManagerId(), new BlockId(blockId)).verify();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private synchronized void addCorrupt(LongBitmap corruptSet, long blockId) {
+        corruptSet.add(blockId);
+        ++corruptCount;
+    }
+
+    // wait until bytes read so far fit scrub rate
+    private void throttle(long startNanos, long bytes) {
+        long dueMillis = bytes * 1000 / ConfigConstants.BLOCK_SCRUB_RATE;
+        long waitMillis = dueMillis - (System.nanoTime() - startNanos) / 1000000;
+        if (waitMillis <= 0 || isStopped)
+            return;
+
+        synchronized (waitLock) {
+            try {
+                waitLock.wait(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        double rate = (lastPassMillis == 0) ? 0 : (double) lastPassBytes / 1024 / 1024 * 1000 / lastPassMillis;
+        return String.format("%d passes, %d blocks, %d bytes scanned, %d corrupt, %d repaired, last pass %d ms at %.2f MB/s",
+                passCount, scannedCount, scannedBytes, corruptCount, repairedCount, lastPassMillis, rate);
+    }
+}
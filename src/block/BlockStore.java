@@ -0,0 +1,580 @@
+package block;
+
+import constant.ConfigConstants;
+import constant.PathConstants;
+import util.ErrorCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32C;
+
+// append-only segment storage for blocks of one block manager
+public class BlockStore {
+    // record header: block id, meta length, data length
+    private final static int RECORD_HEADER_SIZE = Long.BYTES + Integer.BYTES * 2;
+
+    // index checkpoint: magic, segment and write position covered, entry count, entries, crc32c of all before,
+    // entry: block id, segment, offset, meta length, data length
+    private final static int CHECKPOINT_MAGIC = 0x53494458;
+    private final static int CHECKPOINT_HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 2;
+    private final static int CHECKPOINT_ENTRY_SIZE = Long.BYTES + Integer.BYTES * 4;
+
+    // location of a block record inside segments
+    private static class Location {
+        private final int segment;
+        private final long offset;  // position of meta bytes
+        private final int metaLength;
+        private final int dataLength;
+
+        Location(int segment, long offset, int metaLength, int dataLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.metaLength = metaLength;
+            this.dataLength = dataLength;
+        }
+
+        int recordSize() {
+            return RECORD_HEADER_SIZE + metaLength + dataLength;
+        }
+    }
+
+    private final String path;
+    private final TreeMap<Integer, FileChannel> segmentMap;
+    private final HashMap<Integer, Long> liveBytesMap;
+    private volatile long totalLiveBytes = 0;   // sum of live bytes, read by placement without locking
+    private HashMap<Long, Location> index;     // replaced by presized map when checkpoint is loaded
+    private final LinkedHashMap<Integer, MappedByteBuffer> mappingCache;
+    private final HashSet<Integer> dirtySegmentSet;     // segments written since last force
+    private final Object forceLock = new Object();
+    private int currentSegment;
+    private long writePos;
+    private boolean isClosed = false;
+
+    // open segments under given block manager directory
+    public BlockStore(String path) {
+        if (null == path)
+            throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_ARGUMENT);
+
+        this.path = path;
+        this.segmentMap = new TreeMap<>();
+        this.liveBytesMap = new HashMap<>();
+        this.index = new HashMap<>();
+        this.dirtySegmentSet = new HashSet<>();
+        this.currentSegment = 0;
+        this.writePos = 0;
+
+        // keep recently read segments mapped, bounded to limit virtual address space
+        this.mappingCache = new LinkedHashMap<Integer, MappedByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MappedByteBuffer> eldest) {
+                return size() > ConfigConstants.BLOCK_MAPPED_SEGMENT_NUM;
+            }
+        };
+
+        recover();
+    }
+
+    // rebuild in-memory index from last checkpoint, then scan records appended after it in write order,
+    // all segments are scanned without checkpoint
+    private void recover() {
+        File[] files = new File(path).listFiles((dir, name) ->
+                name.startsWith(PathConstants.SEGMENT_PREFIX) && name.endsWith(PathConstants.SEGMENT_SUFFIX));
+
+        if (null != files) {
+            for (File file : files) {
+                String name = file.getName();
+                int segment = Integer.parseInt(name.substring(PathConstants.SEGMENT_PREFIX.length(),
+                        name.length() - PathConstants.SEGMENT_SUFFIX.length()));
+                segmentMap.put(segment, openSegment(segment));
+            }
+        }
+
+        for (int segment : segmentMap.keySet())
+            liveBytesMap.put(segment, 0L);
+
+        // segment and position up to which checkpoint covers records, segments before it need no scan
+        long[] coveredPos = loadCheckpoint();
+        for (int segment : segmentMap.keySet()) {
+            if (null != coveredPos && segment < coveredPos[0])
+                continue;
+
+            currentSegment = segment;
+            long startPos = (null != coveredPos && segment == coveredPos[0]) ? coveredPos[1] : 0;
+            writePos = scanSegment(segment, segmentMap.get(segment), startPos);
+        }
+
+        if (segmentMap.isEmpty()) {
+            segmentMap.put(0, openSegment(0));
+            liveBytesMap.put(0, 0L);
+        }
+    }
+
+    // index records of one segment from given position, return position after the last valid record
+    private long scanSegment(int segment, FileChannel channel, long startPos) {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long pos = startPos;
+
+        try {
+            while (pos + RECORD_HEADER_SIZE <= ConfigConstants.BLOCK_SEGMENT_SIZE) {
+                header.clear();
+                if (channel.read(header, pos) != RECORD_HEADER_SIZE)
+                    break;
+                header.flip();
+
+                // block id starts from 1, zero means preallocated free space
+                long blockId = header.getLong();
+                int metaLength = header.getInt();
+                int dataLength = header.getInt();
+                if (blockId <= 0 || metaLength < 0 || dataLength < 0)
+                    break;
+
+                long end = pos + RECORD_HEADER_SIZE + metaLength + dataLength;
+                if (end > ConfigConstants.BLOCK_SEGMENT_SIZE)
+                    break;  // torn record
+
+                putLocation(blockId, new Location(segment, pos + RECORD_HEADER_SIZE, metaLength, dataLength));
+                pos = end;
+            }
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(segment).getPath());
+        }
+
+        return pos;
+    }
+
+    private File checkpointFile() {
+        return new File(path, PathConstants.SEGMENT_INDEX);
+    }
+
+    // load index of last checkpoint, return segment and write position it covers, null if there is none
+    private long[] loadCheckpoint() {
+        File file = checkpointFile();
+        if (!file.exists() || segmentMap.isEmpty())
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size() - Integer.BYTES;
+            if (length < CHECKPOINT_HEADER_SIZE)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32C crc32c = new CRC32C();
+            crc32c.update(buffer.slice(0, (int) length));
+            if ((int) crc32c.getValue() != buffer.getInt((int) length) || buffer.getInt() != CHECKPOINT_MAGIC)
+                return null;
+
+            int coveredSegment = buffer.getInt();
+            long coveredWritePos = buffer.getLong();
+            long entryNum = buffer.getLong();
+            // covered segment is never compacted before a later one exists
+            if (segmentMap.lastKey() < coveredSegment || CHECKPOINT_HEADER_SIZE + entryNum * CHECKPOINT_ENTRY_SIZE != length)
+                return null;
+
+            // checkpoint ids are unique, so entries go straight into index and live bytes are summed once per segment
+            index = new HashMap<>((int) (entryNum * 4 / 3) + 1);
+            long[] liveBytes = new long[segmentMap.lastKey() + 1];
+            for (long i = 0; i < entryNum; ++i) {
+                long blockId = buffer.getLong();
+                int segment = buffer.getInt();
+                int offset = buffer.getInt();
+                int metaLength = buffer.getInt();
+                int dataLength = buffer.getInt();
+                // records of segments compacted since checkpoint are found again where they were moved
+                if (segment < liveBytes.length && segmentMap.containsKey(segment)) {
+                    Location location = new Location(segment, offset, metaLength, dataLength);
+                    index.put(blockId, location);
+                    liveBytes[segment] += location.recordSize();
+                }
+            }
+            for (int segment : segmentMap.keySet())
+                liveBytesMap.put(segment, liveBytes[segment]);
+            for (long bytes : liveBytes)
+                totalLiveBytes += bytes;
+            return new long[] {coveredSegment, coveredWritePos};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // write index of records up to current write position, startup then scans only records appended later
+    public void writeCheckpoint() {
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = ByteBuffer.allocate(CHECKPOINT_HEADER_SIZE + index.size() * CHECKPOINT_ENTRY_SIZE + Integer.BYTES);
+            buffer.putInt(CHECKPOINT_MAGIC);
+            buffer.putInt(currentSegment);
+            buffer.putLong(writePos);
+            buffer.putLong(index.size());
+            for (Map.Entry<Long, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                buffer.putLong(entry.getKey());
+                buffer.putInt(location.segment);
+                buffer.putInt((int) location.offset);
+                buffer.putInt(location.metaLength);
+                buffer.putInt(location.dataLength);
+            }
+        }
+
+        // records referenced by checkpoint are on disk before it
+        force();
+
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc32c.getValue());
+        buffer.flip();
+
+        File tempFile = new File(checkpointFile().getPath() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                tempChannel.write(buffer);
+            tempChannel.force(false);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, tempFile.getPath());
+        }
+
+        try {
+            Files.move(tempFile.toPath(), checkpointFile().toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, checkpointFile().getPath());
+        }
+    }
+
+    private File segmentFile(int segment) {
+        return new File(path, PathConstants.SEGMENT_PREFIX + segment + PathConstants.SEGMENT_SUFFIX);
+    }
+
+    // open segment file, preallocate space for new one
+    private FileChannel openSegment(int segment) {
+        File file = segmentFile(segment);
+        try {
+            RandomAccessFile segmentFile = new RandomAccessFile(file, "rw");
+            if (segmentFile.length() < ConfigConstants.BLOCK_SEGMENT_SIZE)
+                segmentFile.setLength(ConfigConstants.BLOCK_SEGMENT_SIZE);
+            return segmentFile.getChannel();
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    // index new location of block, keep live bytes of segments up to date
+    private void putLocation(long blockId, Location location) {
+        Location oldLocation = index.put(blockId, location);
+        if (null != oldLocation) {
+            liveBytesMap.merge(oldLocation.segment, (long) -oldLocation.recordSize(), Long::sum);
+            totalLiveBytes -= oldLocation.recordSize();
+        }
+        liveBytesMap.merge(location.segment, (long) location.recordSize(), Long::sum);
+        totalLiveBytes += location.recordSize();
+    }
+
+    private void removeLocation(long blockId) {
+        Location oldLocation = index.remove(blockId);
+        if (null != oldLocation) {
+            liveBytesMap.merge(oldLocation.segment, (long) -oldLocation.recordSize(), Long::sum);
+            totalLiveBytes -= oldLocation.recordSize();
+        }
+    }
+
+    // append block record into current segment, durable after force or through write-ahead log
+    public synchronized void write(long blockId, byte[] meta, byte[] data) {
+        int recordSize = RECORD_HEADER_SIZE + meta.length + data.length;
+        if (recordSize > ConfigConstants.BLOCK_SEGMENT_SIZE)
+            throw new ErrorCode(ErrorCode.INVALID_BLOCK_DATA);
+
+        // roll to a new segment when current one is full
+        if (writePos + recordSize > ConfigConstants.BLOCK_SEGMENT_SIZE) {
+            ++currentSegment;
+            segmentMap.put(currentSegment, openSegment(currentSegment));
+            liveBytesMap.put(currentSegment, 0L);
+            writePos = 0;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putLong(blockId);
+        record.putInt(meta.length);
+        record.putInt(data.length);
+        record.put(meta);
+        record.put(data);
+        record.flip();
+
+        FileChannel channel = segmentMap.get(currentSegment);
+        try {
+            long pos = writePos;
+            while (record.hasRemaining())
+                pos += channel.write(record, pos);
+        } catch (ClosedChannelException e) {
+            // record is left unindexed, later writes overwrite it
+            reopenSegment(currentSegment, channel);
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(currentSegment).getPath());
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(currentSegment).getPath());
+        }
+
+        putLocation(blockId, new Location(currentSegment, writePos + RECORD_HEADER_SIZE, meta.length, data.length));
+        writePos += recordSize;
+        dirtySegmentSet.add(currentSegment);
+    }
+
+    // flush written records of all segments to disk, concurrent callers wait for flush in progress
+    public void force() {
+        synchronized (forceLock) {
+            List<Integer> segmentList;
+            List<FileChannel> channelList = new ArrayList<>();
+            synchronized (this) {
+                segmentList = new ArrayList<>(dirtySegmentSet);
+                for (int segment : segmentList)
+                    channelList.add(segmentMap.get(segment));
+                dirtySegmentSet.clear();
+            }
+
+            // force outside store lock so that writes are not blocked by disk flush
+            for (int i = 0; i < channelList.size(); ++i) {
+                try {
+                    channelList.get(i).force(false);
+                } catch (ClosedChannelException e) {
+                    // segment is compacted and deleted meanwhile, otherwise its channel is reopened and forced again
+                    synchronized (this) {
+                        if (segmentMap.get(segmentList.get(i)) != channelList.get(i))
+                            continue;
+                        reopenSegment(segmentList.get(i), channelList.get(i));
+                        dirtySegmentSet.add(segmentList.get(i));
+                    }
+                    throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(segmentList.get(i)).getPath());
+                } catch (IOException e) {
+                    synchronized (this) {
+                        dirtySegmentSet.add(segmentList.get(i));
+                    }
+                    throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(segmentList.get(i)).getPath());
+                }
+            }
+        }
+    }
+
+    public byte[] readMeta(long blockId) {
+        return read(blockId, true);
+    }
+
+    public byte[] readData(long blockId) {
+        return read(blockId, false);
+    }
+
+    private byte[] read(long blockId, boolean isMeta) {
+        while (true) {
+            Location location;
+            FileChannel channel;
+            synchronized (this) {
+                location = index.get(blockId);
+                channel = (null == location) ? null : segmentMap.get(location.segment);
+            }
+
+            // blocks written before segment store stay in separated files
+            if (null == location)
+                return readLegacy(blockId, isMeta);
+
+            try {
+                return read(location, channel, isMeta);
+            } catch (ClosedChannelException e) {
+                // segment is compacted during read, look up new location, a channel closed otherwise fails the read
+                synchronized (this) {
+                    if (segmentMap.get(location.segment) != channel)
+                        continue;
+                    reopenSegment(location.segment, channel);
+                }
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(location.segment).getPath());
+            }
+        }
+    }
+
+    // replace live segment channel closed by an interrupted read or write, so it is not left dead in segment map
+    private void reopenSegment(int segment, FileChannel channel) {
+        if (isClosed || segmentMap.get(segment) != channel || channel.isOpen())
+            return;
+        mappingCache.remove(segment);
+        segmentMap.put(segment, openSegment(segment));
+    }
+
+    private byte[] read(Location location, FileChannel channel, boolean isMeta) throws ClosedChannelException {
+        long pos = isMeta ? location.offset : location.offset + location.metaLength;
+        int length = isMeta ? location.metaLength : location.dataLength;
+        byte[] bytes = new byte[length];
+
+        if (ConfigConstants.BLOCK_MMAP_READ) {
+            // serve read from mapped segment without extra system calls
+            MappedByteBuffer mapping = getMapping(location.segment, channel);
+            mapping.get((int) pos, bytes, 0, length);
+            return bytes;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, pos + buffer.position()) < 0)
+                    throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
+            }
+        } catch (ClosedChannelException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(location.segment).getPath());
+        }
+        return bytes;
+    }
+
+    // get read-only mapping of whole segment, map it on first access
+    private synchronized MappedByteBuffer getMapping(int segment, FileChannel channel) throws ClosedChannelException {
+        MappedByteBuffer mapping = mappingCache.get(segment);
+        if (null == mapping) {
+            try {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, ConfigConstants.BLOCK_SEGMENT_SIZE);
+            } catch (ClosedChannelException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(segment).getPath());
+            }
+            mappingCache.put(segment, mapping);
+        }
+        return mapping;
+    }
+
+    private File legacyFile(long blockId, boolean isMeta) {
+        String suffix = isMeta ? PathConstants.META_SUFFIX : PathConstants.DATA_SUFFIX;
+        return new File(path, blockId + suffix);
+    }
+
+    // read block from legacy .meta/.data file pair
+    private byte[] readLegacy(long blockId, boolean isMeta) {
+        File file = legacyFile(blockId, isMeta);
+
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            input.close();
+            return bytes;
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    public synchronized boolean contains(long blockId) {
+        return index.containsKey(blockId);
+    }
+
+    // drop block from index, space is reclaimed when its segment is compacted
+    public synchronized void delete(long blockId) {
+        if (index.containsKey(blockId)) {
+            removeLocation(blockId);
+            return;
+        }
+
+        for (boolean isMeta : new boolean[] {true, false}) {
+            File file = legacyFile(blockId, isMeta);
+            if (file.exists() && !file.delete())
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    // drop indexed records which are not owned, e.g. written right before crash
+    public synchronized void retain(LongPredicate isOwned) {
+        List<Long> blockIdList = new ArrayList<>(index.keySet());
+        for (long blockId : blockIdList) {
+            if (!isOwned.test(blockId))
+                removeLocation(blockId);
+        }
+    }
+
+    // find a sealed segment with too few live bytes, -1 if none
+    public synchronized int findCompactSegment() {
+        for (int segment : segmentMap.keySet()) {
+            if (segment == currentSegment)
+                continue;
+            if (liveBytesMap.get(segment) < ConfigConstants.BLOCK_SEGMENT_SIZE * ConfigConstants.BLOCK_SEGMENT_COMPACT_RATIO)
+                return segment;
+        }
+        return -1;
+    }
+
+    // move live records of segment to current segment, then delete the segment file
+    public void compact(int segment) {
+        List<Long> blockIdList = new ArrayList<>();
+        synchronized (this) {
+            if (segment == currentSegment || !segmentMap.containsKey(segment))
+                return;
+            for (long blockId : index.keySet()) {
+                if (index.get(blockId).segment == segment)
+                    blockIdList.add(blockId);
+            }
+        }
+
+        // copy one record at a time so foreground requests are not blocked for long
+        for (long blockId : blockIdList) {
+            synchronized (this) {
+                Location location = index.get(blockId);
+                if (null == location || location.segment != segment)
+                    continue;   // deleted or rewritten meanwhile
+                FileChannel channel = segmentMap.get(segment);
+                try {
+                    write(blockId, read(location, channel, true), read(location, channel, false));
+                } catch (ClosedChannelException e) {
+                    reopenSegment(segment, channel);
+                    throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(segment).getPath());
+                }
+            }
+        }
+
+        // moved records are not logged, make them durable before old copies are gone
+        force();
+
+        synchronized (this) {
+            FileChannel channel = segmentMap.remove(segment);
+            dirtySegmentSet.remove(segment);
+            liveBytesMap.remove(segment);
+            mappingCache.remove(segment);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(segment).getPath());
+            }
+            if (!segmentFile(segment).delete())
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, segmentFile(segment).getPath());
+        }
+    }
+
+    // bytes of records still referenced by index
+    public long getLiveBytes() {
+        return totalLiveBytes;
+    }
+
+    public synchronized void close() {
+        // evicted mappings are released when collected, reads after close fail instead of retrying
+        isClosed = true;
+        mappingCache.clear();
+        for (FileChannel channel : segmentMap.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new ErrorCode(ErrorCode.IO_EXCEPTION, path);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "segments: " + segmentMap.size() + ", blocks: " + index.size() + ", write position: " + writePos;
+    }
+}
@@ -0,0 +1,260 @@
+package block;
+
+import constant.ConfigConstants;
+import util.ErrorCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+// write-ahead log of block creations and removals of one block manager,
+// block store and ownership index are flushed lazily at checkpoints and rebuilt from log after crash
+public class BlockWriteAheadLog {
+    // record: lsn, type, block id, meta length, data length, meta, data, crc32c of all before
+    private final static int RECORD_HEADER_SIZE = Long.BYTES + Byte.BYTES + Long.BYTES + Integer.BYTES * 2;
+    private final static int RECORD_TRAILER_SIZE = Integer.BYTES;
+
+    private final static byte CREATE = 1;
+    private final static byte REMOVE = 2;
+
+    private final File logFile;
+    private FileChannel logChannel;
+
+    // log sequence number keeps growing across checkpoints, log file holds records of one contiguous lsn range
+    private long baseLsn;           // lsn of first record in log file
+    private long writtenLsn;        // lsn after last appended record
+    private volatile long durableLsn;   // lsn up to which log is on disk
+
+    private final Object commitLock = new Object();
+    private long lastCheckpointTime;
+
+    private final AtomicLong commitCount = new AtomicLong();
+    private long flushCount = 0;
+    private long checkpointCount = 0;
+
+    public BlockWriteAheadLog(File logFile) {
+        if (null == logFile)
+            throw new ErrorCode(ErrorCode.NULL_BLOCK_MANAGER_ARGUMENT);
+
+        this.logFile = logFile;
+        try {
+            this.logChannel = new RandomAccessFile(logFile, "rw").getChannel();
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+        this.baseLsn = 0;
+        this.writtenLsn = 0;
+        this.durableLsn = 0;
+        this.lastCheckpointTime = System.currentTimeMillis();
+    }
+
+    // apply logged changes missing from store and ownership index, then start a new log
+    public void replay(BlockStore blockStore, BlockOwnershipIndex ownershipIndex) {
+        try {
+            long pos = 0;
+            long length = logChannel.size();
+            long expectedLsn = -1;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+            while (pos + RECORD_HEADER_SIZE + RECORD_TRAILER_SIZE <= length) {
+                header.clear();
+                while (header.hasRemaining())
+                    logChannel.read(header, pos + header.position());
+                header.flip();
+
+                long lsn = header.getLong();
+                byte type = header.get();
+                long blockId = header.getLong();
+                int metaLength = header.getInt();
+                int dataLength = header.getInt();
+
+                // records left behind by an earlier, longer log carry lsn of another position
+                if (blockId <= 0 || metaLength < 0 || dataLength < 0 || (expectedLsn >= 0 && lsn != expectedLsn))
+                    break;
+                long recordSize = (long) RECORD_HEADER_SIZE + metaLength + dataLength + RECORD_TRAILER_SIZE;
+                if (pos + recordSize > length)
+                    break;  // torn record
+
+                ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+                while (record.hasRemaining())
+                    logChannel.read(record, pos + record.position());
+                CRC32C crc32c = new CRC32C();
+                crc32c.update(record.array(), 0, (int) recordSize - RECORD_TRAILER_SIZE);
+                if ((int) crc32c.getValue() != record.getInt((int) recordSize - RECORD_TRAILER_SIZE))
+                    break;  // torn record
+
+                if (type == CREATE) {
+                    byte[] meta = new byte[metaLength];
+                    byte[] data = new byte[dataLength];
+                    record.position(RECORD_HEADER_SIZE);
+                    record.get(meta);
+                    record.get(data);
+                    // rewrite record, copy in store may be torn or lost
+                    blockStore.write(blockId, meta, data);
+                    ownershipIndex.add(blockId);
+                } else if (type == REMOVE) {
+                    ownershipIndex.remove(blockId);
+                    blockStore.delete(blockId);
+                } else {
+                    throw new ErrorCode(ErrorCode.WAL_RECORD_INVALID, logFile.getPath() + " type " + type);
+                }
+
+                if (expectedLsn < 0)
+                    baseLsn = lsn;
+                expectedLsn = lsn + recordSize;
+                pos += recordSize;
+            }
+
+            synchronized (this) {
+                writtenLsn = baseLsn + pos;
+                durableLsn = writtenLsn;
+            }
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+
+        checkpoint(blockStore, ownershipIndex);
+    }
+
+    // log new block with its stored content, return lsn to commit
+    public long logCreate(long blockId, byte[] meta, byte[] data) {
+        return append(CREATE, blockId, meta, data);
+    }
+
+    // log removal of block from ownership, return lsn to commit
+    public long logRemove(long blockId) {
+        return append(REMOVE, blockId, new byte[0], new byte[0]);
+    }
+
+    private synchronized long append(byte type, long blockId, byte[] meta, byte[] data) {
+        int recordSize = RECORD_HEADER_SIZE + meta.length + data.length + RECORD_TRAILER_SIZE;
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putLong(writtenLsn);
+        record.put(type);
+        record.putLong(blockId);
+        record.putInt(meta.length);
+        record.putInt(data.length);
+        record.put(meta);
+        record.put(data);
+
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(record.array(), 0, record.position());
+        record.putInt((int) crc32c.getValue());
+        record.flip();
+
+        try {
+            long pos = writtenLsn - baseLsn;
+            while (record.hasRemaining())
+                pos += logChannel.write(record, pos);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+
+        writtenLsn += recordSize;
+        return writtenLsn;
+    }
+
+    // lsn of all records appended so far
+    public synchronized long getWrittenLsn() {
+        return writtenLsn;
+    }
+
+    // wait until log is on disk up to given lsn
+    public void commit(long lsn, int durability) {
+        if (durability == IBlockManager.DURABILITY_ASYNC)
+            return;
+        commitCount.incrementAndGet();
+        if (durableLsn >= lsn)
+            return;
+
+        // first waiting writer flushes for everyone who appended before its force
+        synchronized (commitLock) {
+            if (durableLsn >= lsn)
+                return;
+
+            // give concurrent writers a moment to append, one flush then covers all of them
+            if (durability == IBlockManager.DURABILITY_GROUP && ConfigConstants.BLOCK_WAL_GROUP_COMMIT_WAIT > 0)
+                LockSupport.parkNanos(ConfigConstants.BLOCK_WAL_GROUP_COMMIT_WAIT * 1000);
+            flush();
+        }
+    }
+
+    // force log to disk, caller holds commit lock
+    private void flush() {
+        long lsn;
+        FileChannel channel;
+        synchronized (this) {
+            lsn = writtenLsn;
+            channel = logChannel;
+        }
+        if (durableLsn >= lsn)
+            return;
+
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+        }
+        ++flushCount;
+        durableLsn = lsn;
+    }
+
+    // flush records of async writes
+    public void flushAsync() {
+        synchronized (commitLock) {
+            flush();
+        }
+    }
+
+    public synchronized boolean needCheckpoint() {
+        return writtenLsn - baseLsn >= ConfigConstants.BLOCK_WAL_CHECKPOINT_SIZE
+                || System.currentTimeMillis() - lastCheckpointTime >= ConfigConstants.BLOCK_WAL_CHECKPOINT_INTERVAL;
+    }
+
+    // make store and ownership index durable, then drop logged records
+    public void checkpoint(BlockStore blockStore, BlockOwnershipIndex ownershipIndex) {
+        synchronized (commitLock) {
+            synchronized (this) {
+                // appends wait here, changes logged so far are all applied to store and index
+                if (writtenLsn > baseLsn) {
+                    blockStore.force();
+                    ownershipIndex.force();
+                    try {
+                        // file size must reach disk too, stale records must not follow new ones after crash
+                        logChannel.truncate(0);
+                        logChannel.force(true);
+                    } catch (IOException e) {
+                        throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+                    }
+                    baseLsn = writtenLsn;
+                    durableLsn = writtenLsn;
+                    ++checkpointCount;
+                }
+                lastCheckpointTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (commitLock) {
+            synchronized (this) {
+                try {
+                    logChannel.close();
+                } catch (IOException e) {
+                    throw new ErrorCode(ErrorCode.IO_EXCEPTION, logFile.getPath());
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "log bytes: " + (writtenLsn - baseLsn) + ", commits: " + commitCount.get() + ", flushes: " + flushCount
+                + ", checkpoints: " + checkpointCount;
+    }
+}
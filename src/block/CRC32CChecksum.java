@@ -0,0 +1,30 @@
+package block;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+// CRC32C checksum, computed with hardware instructions where available
+public class CRC32CChecksum implements IChecksum {
+    public final static byte TYPE = 1;
+    public final static String NAME = "CRC32C";
+
+    @Override
+    public byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    public int getLength() {
+        return Integer.BYTES;
+    }
+
+    @Override
+    public byte[] compute(byte[] data) {
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(data, 0, data.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        buffer.putInt((int) crc32c.getValue());
+        return buffer.array();
+    }
+}
@@ -0,0 +1,56 @@
+package block;
+
+import util.ErrorCode;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// zlib deflate, better ratio at higher cost than LZ
+public class DeflateCodec implements IBlockCodec {
+    public final static byte TYPE = 1;
+    public final static String NAME = "DEFLATE";
+
+    @Override
+    public byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(data);
+        deflater.finish();
+
+        // output larger than input is useless, stop there
+        byte[] buffer = new byte[data.length];
+        int length = deflater.deflate(buffer);
+        boolean isFinished = deflater.finished();
+        deflater.end();
+
+        if (!isFinished)
+            return data;
+
+        byte[] stored = new byte[length];
+        System.arraycopy(buffer, 0, stored, 0, length);
+        return stored;
+    }
+
+    @Override
+    public byte[] decompress(byte[] stored, int size) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(stored);
+
+        byte[] data = new byte[size];
+        try {
+            int length = inflater.inflate(data);
+            if (length != size || !inflater.finished())
+                throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
+        } catch (DataFormatException e) {
+            throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+}
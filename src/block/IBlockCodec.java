@@ -0,0 +1,35 @@
+package block;
+
+import util.ErrorCode;
+
+public interface IBlockCodec {
+    byte getType();
+    byte[] compress(byte[] data);
+    byte[] decompress(byte[] stored, int size);
+
+    static IBlockCodec getCodec(byte type) {
+        switch (type) {
+            case NoneCodec.TYPE:
+                return new NoneCodec();
+            case DeflateCodec.TYPE:
+                return new DeflateCodec();
+            case LZCodec.TYPE:
+                return new LZCodec();
+            default:
+                throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_CODEC, String.valueOf(type));
+        }
+    }
+
+    static IBlockCodec getCodec(String name) {
+        switch (name) {
+            case NoneCodec.NAME:
+                return new NoneCodec();
+            case DeflateCodec.NAME:
+                return new DeflateCodec();
+            case LZCodec.NAME:
+                return new LZCodec();
+            default:
+                throw new ErrorCode(ErrorCode.UNKNOWN_BLOCK_CODEC, name);
+        }
+    }
+}
@@ -3,11 +3,20 @@ package block;
 import id.Id;
 
 public interface IBlockManager {
+    // how durable a new block is when newBlock returns, group is the default
+    int DURABILITY_GROUP = 0;   // logged and flushed together with concurrent writes
+    int DURABILITY_SYNC = 1;    // logged and flushed at once
+    int DURABILITY_ASYNC = 2;   // logged, flushed by background checkpointer within flush interval
+
     IBlock getBlock(Id indexId);
     IBlock newBlock(byte[] b);
+    IBlock newBlock(byte[] b, int durability);
     default IBlock newEmptyBlock(int blockSize) {
         return newBlock(new byte[blockSize]);
     }
+    static boolean isValidDurability(int durability) {
+        return durability == DURABILITY_GROUP || durability == DURABILITY_SYNC || durability == DURABILITY_ASYNC;
+    }
     String getPath();
     Id getManagerId();
 }
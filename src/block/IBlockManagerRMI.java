@@ -6,5 +6,6 @@ import java.rmi.RemoteException;
 public interface IBlockManagerRMI extends Remote {
     IBlock getBlockRMI(long blockIdNum) throws RemoteException;
     IBlock newBlockRMI(byte[] b) throws RemoteException;
+    IBlock newBlockRMI(byte[] b, int durability) throws RemoteException;
     String getPathRMI() throws RemoteException;
 }
\ No newline at end of file
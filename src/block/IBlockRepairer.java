@@ -0,0 +1,12 @@
+package block;
+
+import util.LongBitmap;
+
+// rewrites corrupt blocks from healthy copies, provided by file layer which knows replicas and stripes of blocks
+public interface IBlockRepairer {
+    // repair given blocks of given manager, repaired ids are removed from set
+    void repair(BlockManagerId blockManagerId, LongBitmap corruptSet);
+
+    // add replicas to blocks left short of them by failed replica writes
+    void repairUnderReplicated();
+}
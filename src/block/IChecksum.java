@@ -0,0 +1,31 @@
+package block;
+
+import util.ErrorCode;
+
+public interface IChecksum {
+    byte getType();
+    int getLength();
+    byte[] compute(byte[] data);
+
+    static IChecksum getChecksum(byte type) {
+        switch (type) {
+            case CRC32CChecksum.TYPE:
+                return new CRC32CChecksum();
+            case MD5Checksum.TYPE:
+                return new MD5Checksum();
+            default:
+                throw new ErrorCode(ErrorCode.UNKNOWN_CHECKSUM_TYPE, String.valueOf(type));
+        }
+    }
+
+    static IChecksum getChecksum(String name) {
+        switch (name) {
+            case CRC32CChecksum.NAME:
+                return new CRC32CChecksum();
+            case MD5Checksum.NAME:
+                return new MD5Checksum();
+            default:
+                throw new ErrorCode(ErrorCode.UNKNOWN_CHECKSUM_TYPE, name);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package block;
+
+import util.ErrorCode;
+
+import java.util.Arrays;
+
+// fast LZ77 codec in LZ4-like sequence format:
+// token (literal length << 4 | match length - 4), literals, 2-byte offset, extended lengths as 255-runs
+public class LZCodec implements IBlockCodec {
+    public final static byte TYPE = 2;
+    public final static String NAME = "LZ";
+
+    private final static int MIN_MATCH = 4;
+    private final static int MAX_OFFSET = 0xFFFF;
+    private final static int HASH_LOG = 12;
+
+    @Override
+    public byte getType() {
+        return TYPE;
+    }
+
+    private static int readInt(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8
+                | (bytes[pos + 2] & 0xFF) << 16 | (bytes[pos + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int value) {
+        return (value * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeLength(byte[] dst, int pos, int length) {
+        while (length >= 255) {
+            dst[pos++] = (byte) 255;
+            length -= 255;
+        }
+        dst[pos++] = (byte) length;
+        return pos;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        int[] hashTable = new int[1 << HASH_LOG];
+        Arrays.fill(hashTable, -1);
+
+        // output larger than input is useless, stop there
+        byte[] dst = new byte[data.length];
+        int dstPos = 0;
+        int anchor = 0;
+        int pos = 0;
+
+        try {
+            while (pos + MIN_MATCH <= data.length) {
+                int value = readInt(data, pos);
+                int h = hash(value);
+                int ref = hashTable[h];
+                hashTable[h] = pos;
+
+                if (ref < 0 || pos - ref > MAX_OFFSET || readInt(data, ref) != value) {
+                    ++pos;
+                    continue;
+                }
+
+                int matchLength = MIN_MATCH;
+                while (pos + matchLength < data.length && data[ref + matchLength] == data[pos + matchLength])
+                    ++matchLength;
+
+                dstPos = writeSequence(dst, dstPos, data, anchor, pos - anchor, pos - ref, matchLength);
+                pos += matchLength;
+                anchor = pos;
+            }
+
+            // trailing literals without match
+            dstPos = writeSequence(dst, dstPos, data, anchor, data.length - anchor, 0, 0);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return data;
+        }
+
+        byte[] stored = new byte[dstPos];
+        System.arraycopy(dst, 0, stored, 0, dstPos);
+        return stored;
+    }
+
+    private static int writeSequence(byte[] dst, int dstPos, byte[] data, int literalStart, int literalLength, int offset, int matchLength) {
+        int matchCode = (matchLength == 0) ? 0 : matchLength - MIN_MATCH;
+        dst[dstPos++] = (byte) (Math.min(literalLength, 15) << 4 | Math.min(matchCode, 15));
+        if (literalLength >= 15)
+            dstPos = writeLength(dst, dstPos, literalLength - 15);
+
+        System.arraycopy(data, literalStart, dst, dstPos, literalLength);
+        dstPos += literalLength;
+
+        if (matchLength == 0)
+            return dstPos;
+
+        dst[dstPos++] = (byte) offset;
+        dst[dstPos++] = (byte) (offset >>> 8);
+        if (matchCode >= 15)
+            dstPos = writeLength(dst, dstPos, matchCode - 15);
+        return dstPos;
+    }
+
+    @Override
+    public byte[] decompress(byte[] stored, int size) {
+        byte[] data = new byte[size];
+        int srcPos = 0;
+        int pos = 0;
+
+        try {
+            while (srcPos < stored.length) {
+                int token = stored[srcPos++] & 0xFF;
+
+                int literalLength = token >>> 4;
+                if (literalLength == 15) {
+                    int b;
+                    do {
+                        b = stored[srcPos++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(stored, srcPos, data, pos, literalLength);
+                srcPos += literalLength;
+                pos += literalLength;
+
+                if (srcPos >= stored.length)
+                    break;
+
+                int offset = (stored[srcPos] & 0xFF) | (stored[srcPos + 1] & 0xFF) << 8;
+                srcPos += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = stored[srcPos++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+
+                // copy byte by byte, match may overlap its own output
+                int ref = pos - offset;
+                if (offset == 0 || ref < 0)
+                    throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
+                for (int i = 0; i < matchLength; ++i)
+                    data[pos++] = data[ref + i];
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
+        }
+
+        if (pos != size)
+            throw new ErrorCode(ErrorCode.BLOCK_DATA_FILE_INVALID);
+        return data;
+    }
+}
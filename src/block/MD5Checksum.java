@@ -0,0 +1,33 @@
+package block;
+
+import util.ErrorCode;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// MD5 checksum, used by block meta files written before CRC32C
+public class MD5Checksum implements IChecksum {
+    public final static byte TYPE = 2;
+    public final static String NAME = "MD5";
+
+    @Override
+    public byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    public int getLength() {
+        return 16;
+    }
+
+    @Override
+    public byte[] compute(byte[] data) {
+        try {
+            MessageDigest MD5 = MessageDigest.getInstance("MD5");
+            MD5.update(data);
+            return MD5.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new ErrorCode(ErrorCode.MD5_INVALID);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package block;
+
+// store block data as it is, also used for blocks written before compression
+public class NoneCodec implements IBlockCodec {
+    public final static byte TYPE = 0;
+    public final static String NAME = "NONE";
+
+    @Override
+    public byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        return data;
+    }
+
+    @Override
+    public byte[] decompress(byte[] stored, int size) {
+        return stored;
+    }
+}
@@ -2,19 +2,61 @@ package constant;
 
 public class ConfigConstants {
     public final static int BLOCK_SIZE = 512;
+    public final static int BLOCK_MAX_SIZE = 4 * 1024 * 1024;
+    public final static int BLOCK_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public final static boolean BLOCK_MMAP_READ = true;
+    public final static int BLOCK_MAPPED_SEGMENT_NUM = 16;
+    public final static String BLOCK_CHECKSUM = "CRC32C";
+    public final static String BLOCK_CODEC = "LZ";
+    public final static double BLOCK_CODEC_MIN_SAVING = 0.125;    // store raw data when compression saves less
+    public final static String BLOCK_VERIFY_MODE = "ON_LOAD";     // ALWAYS, ON_LOAD or SAMPLED
+    public final static double BLOCK_VERIFY_SAMPLE_RATE = 0.01;   // share of reads of verified blocks checked again in SAMPLED mode
+    public final static int BLOCK_ID_LEASE_SIZE = 4096;
+    public final static int BLOCK_OWNERSHIP_LOG_BUFFER_SIZE = 64 * 1024;
+    public final static int BLOCK_OWNERSHIP_COMPACT_THRESHOLD = 64 * 1024;
+    public final static double BLOCK_SEGMENT_COMPACT_RATIO = 0.5;
+    public final static boolean BLOCK_DEDUP = true;
+    public final static long BLOCK_WAL_GROUP_COMMIT_WAIT = 200;    // microseconds a group commit waits for more writes
+    public final static long BLOCK_WAL_FLUSH_INTERVAL = 100;    // milliseconds between flushes of async writes
+    public final static long BLOCK_WAL_CHECKPOINT_INTERVAL = 10 * 1000;
+    public final static long BLOCK_WAL_CHECKPOINT_SIZE = 64 * 1024 * 1024;
+    public final static long BLOCK_INDEX_CHECKPOINT_INTERVAL = 5 * 60 * 1000;    // milliseconds between checkpoints of store and ownership indexes
+    public final static boolean BLOCK_CACHE_PREWARM = true;      // reload blocks cached before last stop in background
+
+    public final static long BLOCK_GC_INTERVAL = 60 * 1000;
+    public final static int BLOCK_GC_DELETE_RATE = 1000;    // deleted blocks per second
+    public final static long BLOCK_SCRUB_INTERVAL = 60 * 60 * 1000;    // milliseconds between scrub passes
+    public final static long BLOCK_SCRUB_RATE = 4 * 1024 * 1024;       // stored bytes per second read by scrubber
     public final static int DUPLICATION_NUM = 3;
     public final static int BLOCK_MANAGER_NUM = 5;
+    public final static long BLOCK_MANAGER_CAPACITY = 64L * 1024 * 1024 * 1024;    // stored bytes a block manager is placed up to
     public final static int FILE_MANAGER_NUM = 3;
 
     public final static String RMI_SERVER_HOST = "localhost";
     public final static String RMI_MANAGER_REGISTRY_PREFIX = "rmi://";
 
     public final static int MANAGER_CLIENT_SOCKET_TIMEOUT = 1000;
+    public final static boolean READ_HEDGE = true;                  // ask next replica when first one is slow
+    public final static double READ_HEDGE_PERCENTILE = 0.95;        // recent read latency a hedged read waits for
+    public final static long READ_HEDGE_MIN_DELAY = 500;            // microseconds
+    public final static double READ_LATENCY_EWMA_WEIGHT = 0.2;
+    public final static String WRITE_ACK_MODE = "ALL";              // replicas a block write needs: ALL, QUORUM or ONE
+    public final static int WRITE_MAX_IN_FLIGHT = 64;               // replica writes in flight across all files
+    public final static long WRITE_BUFFER_MAX_BYTES = 4 * 1024 * 1024;   // dirty bytes a file handle buffers before flushing, 0 writes through
+    public final static int READ_MAX_IN_FLIGHT = 64;                // block fetches in flight across all files
+    public final static boolean READAHEAD = true;                   // prefetch blocks for sequential reads
+    public final static int READAHEAD_MIN_BLOCKS = 4;               // window once reads turn sequential, doubled per read
+    public final static int READAHEAD_MAX_BLOCKS = 64;
+    public final static long READAHEAD_MAX_BYTES = 4 * 1024 * 1024; // window bound for large blocks
 
     public final static int RMI_SERVER_PORT = 10000;
-    public final static int BLOCK_MANAGER_SERVER_CACHE_SIZE = 10;
+    public final static long BLOCK_MANAGER_SERVER_CACHE_SIZE = 64 * 1024 * 1024;    // bytes of off-heap block cache
+    public final static int BLOCK_CACHE_SLAB_SIZE = 8 * 1024 * 1024;
+    public final static String BLOCK_CACHE_POLICY = "TinyLFU";     // LRU, SLRU or TinyLFU
+    public final static boolean BLOCK_CACHE_TRACE = false;         // record block accesses for cache simulator
     public final static int BLOCK_MANAGER_CLIENT_BUFFER_SIZE = 10;
 
     public final static int FILE_MANAGER_SERVER_CACHE_SIZE = 10;
+    public final static String FILE_CACHE_POLICY = "TinyLFU";
 
 }
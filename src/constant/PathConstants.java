@@ -7,13 +7,21 @@ public class PathConstants {
 
     public final static String META_SUFFIX = ".meta";
     public final static String DATA_SUFFIX = ".data";
+    public final static String SEGMENT_SUFFIX = ".seg";
+    public final static String OWNERSHIP_LOG_SUFFIX = ".owned";
+    public final static String WAL_SUFFIX = ".wal";
+    public final static String CACHE_TRACE_SUFFIX = ".trace";
+    public final static String CHECKPOINT_SUFFIX = ".ckpt";
+    public final static String WARM_LIST_SUFFIX = ".warm";
 
     public final static String BLOCK_MANAGER_PREFIX = "bm";
     public final static String FILE_MANAGER_PREFIX = "fm";
     public final static String FILE_PREFIX = "f";
+    public final static String SEGMENT_PREFIX = "segment";
 
     public final static String BLOCK_ID_COUNT = "blockId.count";
     public final static String BLOCK_MANAGER_ID_COUNT = "blockManagerId.count";
     public final static String FILE_ID_COUNT = "fileId.count";
     public final static String FILE_MANAGER_ID_COUNT = "fileManagerId.count";
+    public final static String SEGMENT_INDEX = "segmentIndex.ckpt";
 }
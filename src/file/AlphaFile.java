@@ -8,20 +8,37 @@ import block.BlockManagerClient;
 import block.BlockManagerRMIId;
 import block.BlockManagerId;
 import block.BlockManagerServer;
+import block.BlockPlacement;
 import block.IBlockManager;
 import constant.ConfigConstants;
 import constant.PathConstants;
 import id.Id;
 import util.ByteUtils;
 import util.ErrorCode;
+import util.LongBitmap;
+import util.ReedSolomon;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class AlphaFile implements IFile, Serializable {
     private static final long serialVersionUID = -6937137948304956403L;
@@ -30,32 +47,55 @@ public class AlphaFile implements IFile, Serializable {
     private static class Meta implements Serializable {
         private static final long serialVersionUID = 2533912448887277622L;
 
-        private final int blockSize = ConfigConstants.BLOCK_SIZE;
+        private final int blockSize;
 
         private long size;
+        private BlockExtentList extentList;
+
+        private RedundancyPolicy policy;
+        private BlockExtentList parityList;     // parity blocks of stripe j at [j * parity num, (j + 1) * parity num)
+
+        private int durability;     // durability of block writes, group for legacy meta
+
+        // per-block replica maps of legacy meta, converted into extent list when read
         private List<HashMap<BlockManagerId, BlockId>> logicBlockList;
 
         private long pointer;
 
-        Meta(long size, ArrayList<HashMap<BlockManagerId, BlockId>> logicBlockList) {
-            this.size = size;
-            this.logicBlockList = logicBlockList;
+        Meta(int blockSize) {
+            this.blockSize = blockSize;
+            this.size = 0;
+            this.extentList = new BlockExtentList();
+            this.policy = RedundancyPolicy.getDefault();
+            this.parityList = new BlockExtentList();
+            this.durability = IBlockManager.DURABILITY_GROUP;
+            this.logicBlockList = null;
             this.pointer = 0;
         }
 
+        private void readObject(ObjectInputStream inputStream) throws IOException, ClassNotFoundException {
+            inputStream.defaultReadObject();
+            if (null == extentList) {
+                extentList = BlockExtentList.fromLogicBlockList(logicBlockList);
+                logicBlockList = null;
+            }
+            if (null == policy) {
+                policy = RedundancyPolicy.getDefault();
+                parityList = new BlockExtentList();
+            }
+        }
+
         @Override
         public String toString() {
             StringBuilder strBuilder = new StringBuilder();
             strBuilder.append("size: " + size + "\n");
             strBuilder.append("block size: " + blockSize + "\n");
-            for (int i = 0; i < logicBlockList.size(); ++i) {
-                strBuilder.append(i + ":");
-                HashMap<BlockManagerId, BlockId> logicBlockMap = logicBlockList.get(i);
-                for (BlockManagerId blockManagerId : logicBlockMap.keySet()) {
-                    BlockId blockId = logicBlockMap.get(blockManagerId);
-                    strBuilder.append(" [\"" + blockManagerId.getId() + "\"," + blockId.getId() + "]");
-                }
-                strBuilder.append("\n");
+            strBuilder.append("redundancy: " + policy + "\n");
+            strBuilder.append("durability: " + durability + "\n");
+            strBuilder.append(extentList);
+            if (policy.isErasureCoded()) {
+                strBuilder.append("parity:\n");
+                strBuilder.append(parityList);
             }
             return strBuilder.toString();
         }
@@ -66,19 +106,38 @@ public class AlphaFile implements IFile, Serializable {
     private final AlphaFileId fileId;
     private Meta meta;
 
+    // file manager hands out one cached file per field id, so state below is shared by every caller of the file
+    // and guarded by file lock together with meta
+    private transient Readahead readahead;     // null until first read
+    private transient TreeMap<Integer, byte[]> dirtyMap;   // logic blocks written through this file and not flushed
+    private transient boolean isGrown;         // size grown by buffered writes, not yet set on remote file manager
+    private transient List<ReplicaWriter.BlockWrite> lateWriteList;   // block writes with replicas still running
+
     private boolean isClient;
     private String hostName;
     private int port;
 
+    // serialized for RMI while other callers may use the file
+    private synchronized void writeObject(ObjectOutputStream outputStream) throws IOException {
+        outputStream.defaultWriteObject();
+    }
+
     // create new file under given file manager
     public AlphaFile(AlphaFileManagerId fileManagerId, FieldId fieldId) {
+        this(fileManagerId, fieldId, ConfigConstants.BLOCK_SIZE);
+    }
+
+    // create new file with given block size under given file manager
+    public AlphaFile(AlphaFileManagerId fileManagerId, FieldId fieldId, int blockSize) {
         if (null == fileManagerId)
             throw new ErrorCode(ErrorCode.NULL_FILE_ARGUMENT);
+        if (!isValidBlockSize(blockSize))
+            throw new ErrorCode(ErrorCode.INVALID_FILE_BLOCK_SIZE, String.valueOf(blockSize));
 
         this.fileManagerId = fileManagerId;
         this.fieldId = fieldId;
         this.fileId = getNewFileId();
-        this.meta = new Meta(0, new ArrayList<>());
+        this.meta = new Meta(blockSize);
         writeMeta(this.meta);
 
         this.isClient = false;
@@ -99,8 +158,14 @@ public class AlphaFile implements IFile, Serializable {
         this.hostName = null;
     }
 
-    // get id for new file,  add 1 to id count
-    private AlphaFileId getNewFileId() {
+    // block size must be power of 2 between default and max block size
+    public static boolean isValidBlockSize(int blockSize) {
+        return blockSize >= ConfigConstants.BLOCK_SIZE && blockSize <= ConfigConstants.BLOCK_MAX_SIZE
+                && Integer.bitCount(blockSize) == 1;
+    }
+
+    // get id for new file,  add 1 to id count, serialized since id count file is read then rewritten
+    private static synchronized AlphaFileId getNewFileId() {
         File file = new File(PathConstants.FILE_MANAGER_PATH, PathConstants.FILE_ID_COUNT);
         long newFileIdNum;
 
@@ -143,8 +208,9 @@ public class AlphaFile implements IFile, Serializable {
             File file = new File(fileManager.getPath(), fileId.getId() + PathConstants.META_SUFFIX);
 
             try {
-                // write meta object into meta file
-                RandomAccessFile output = new RandomAccessFile(file, "rwd");
+                // write meta object into meta file, synchronously unless file writes are async
+                String mode = (meta.durability == IBlockManager.DURABILITY_ASYNC) ? "rw" : "rwd";
+                RandomAccessFile output = new RandomAccessFile(file, mode);
                 byte[] metaStr = ByteUtils.objectToSerialize(meta);
                 output.write(metaStr);
                 output.close();
@@ -154,47 +220,535 @@ public class AlphaFile implements IFile, Serializable {
         }
     }
 
-    // write data into blocks with duplication
+    // get block manager of given id, through RMI client for remote file
+    private IBlockManager getBlockManager(BlockManagerId blockManagerId) {
+        if (isClient) {
+            BlockManagerRMIId blockManagerRMIId = new BlockManagerRMIId(hostName, port, blockManagerId.getId());
+            return BlockManagerClient.getClient(blockManagerRMIId);
+        } else {
+            return BlockManagerServer.getServer(blockManagerId);
+        }
+    }
+
+    private Id getBlockIndexId(BlockId blockId) {
+        return isClient ? new BlockClientId(blockId.getId()) : blockId;
+    }
+
+    // read data of replicas in order of expected latency, null if none is available
+    private byte[] readBlock(Map<BlockManagerId, BlockId> logicBlockMap) {
+        List<BlockManagerId> replicaList = ReplicaSelector.order(logicBlockMap.keySet());
+        List<BlockManagerId> corruptList = Collections.synchronizedList(new ArrayList<>());
+
+        byte[] data = null;
+        if (ConfigConstants.READ_HEDGE && replicaList.size() > 1 && !isCachedLocally(replicaList.get(0), logicBlockMap)) {
+            data = readHedged(logicBlockMap, replicaList, corruptList);
+        } else {
+            for (int i = 0; i < replicaList.size() && null == data; ++i)
+                data = readReplica(replicaList.get(i), logicBlockMap.get(replicaList.get(i)), corruptList);
+        }
+
+        // replicas failing checksum are rewritten rather than left in place
+        if (null != data && !isClient) {
+            synchronized (corruptList) {
+                for (BlockManagerId corruptManagerId : corruptList)
+                    repairReplica(corruptManagerId, logicBlockMap.get(corruptManagerId), data);
+            }
+        }
+        return data;
+    }
+
+    // ask fastest replica first and next one too once it is slower than recent reads, first answer wins,
+    // failed reads move on to next replica at once instead of waiting out the hedge delay
+    private byte[] readHedged(Map<BlockManagerId, BlockId> logicBlockMap, List<BlockManagerId> replicaList,
+                              List<BlockManagerId> corruptList) {
+        CompletionService<byte[]> readService = new ExecutorCompletionService<>(ReplicaSelector.getExecutor());
+        Map<Future<byte[]>, Integer> orderMap = new HashMap<>();
+        int next = 0;
+        boolean isHedged = false;
+
+        try {
+            while (true) {
+                if (orderMap.isEmpty()) {
+                    if (next == replicaList.size())
+                        return null;
+                    BlockManagerId blockManagerId = replicaList.get(next);
+                    orderMap.put(readService.submit(() -> readReplica(blockManagerId, logicBlockMap.get(blockManagerId), corruptList)), next++);
+                }
+
+                Future<byte[]> future = (next < replicaList.size())
+                        ? readService.poll(ReplicaSelector.getHedgeDelayMicros(), TimeUnit.MICROSECONDS)
+                        : readService.take();
+                if (null == future) {
+                    BlockManagerId blockManagerId = replicaList.get(next);
+                    orderMap.put(readService.submit(() -> readReplica(blockManagerId, logicBlockMap.get(blockManagerId), corruptList)), next++);
+                    isHedged = true;
+                    continue;
+                }
+
+                int order = orderMap.remove(future);
+                byte[] data = future.get();
+                if (null != data) {
+                    // losing reads finish in background, interrupting them would close store channels
+                    if (isHedged)
+                        ReplicaSelector.recordHedge(order > 0);
+                    return data;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private boolean isCachedLocally(BlockManagerId blockManagerId, Map<BlockManagerId, BlockId> logicBlockMap) {
+        if (isClient)
+            return false;
+        BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
+        return null != blockManagerServer && blockManagerServer.isCached(logicBlockMap.get(blockManagerId));
+    }
+
+    // read data of one replica and record its latency, null if unavailable
+    private byte[] readReplica(BlockManagerId blockManagerId, BlockId blockId, List<BlockManagerId> corruptList) {
+        long startNanos = System.nanoTime();
+        try {
+            // local block is read without a block object, remote one arrives as block over RMI
+            byte[] data;
+            if (isClient) {
+                Block block = (Block) getBlockManager(blockManagerId).getBlock(getBlockIndexId(blockId));
+                data = block.read();
+            } else {
+                data = BlockManagerServer.getServer(blockManagerId).readBlock(blockId);
+            }
+            ReplicaSelector.recordSuccess(blockManagerId, (System.nanoTime() - startNanos) / 1000);
+            return data;
+        } catch (ErrorCode e) {
+            if (e.getErrorCode() == ErrorCode.CHECKSUM_CHECK_FAILED)
+                corruptList.add(blockManagerId);
+        } catch (Exception e) {
+            // try next replica
+        }
+        ReplicaSelector.recordFailure(blockManagerId, (System.nanoTime() - startNanos) / 1000);
+        return null;
+    }
+
+    private void repairReplica(BlockManagerId blockManagerId, BlockId blockId, byte[] data) {
+        try {
+            BlockManagerServer.getServer(blockManagerId).repairBlock(blockId, data);
+        } catch (ErrorCode e) {
+            // left to scrubber
+        }
+    }
+
+    // read data of logic block in given list, zeros for unallocated or out of range block, null if unavailable
+    private byte[] readShard(BlockExtentList blockList, int index) {
+        if (index >= blockList.blockNum() || blockList.isHole(index))
+            return new byte[meta.blockSize];
+        return readBlock(blockList.get(index));
+    }
+
+    // allocate unallocated logic block of erasure coded file with given data, blocks of a stripe are allocated
+    // to different serving block managers, so one after another
+    private Map<BlockManagerId, BlockId> allocateStripeBlock(int index, byte[] bytes) {
+        checkServing();
+        BlockManager blockManager = new BlockManager(chooseStripeManager(index / meta.policy.getDataNum()));
+        Block block = blockManager.newBlock(bytes, meta.durability);
+        Map<BlockManagerId, BlockId> newBlockMap = new LinkedHashMap<>();
+        newBlockMap.put(blockManager.getManagerId(), block.getIndexId());
+        return newBlockMap;
+    }
+
+    // wait for issued block writes and record written replicas, blocks written before a failure are kept
+    private void collectWrites(BlockExtentList extentList, List<ReplicaWriter.BlockWrite> writeList, ErrorCode error) {
+        for (ReplicaWriter.BlockWrite blockWrite : writeList) {
+            try {
+                extentList.set(blockWrite.getIndex(), blockWrite.collect());
+                if (!blockWrite.isSettled()) {
+                    if (null == lateWriteList)
+                        lateWriteList = new ArrayList<>();
+                    lateWriteList.add(blockWrite);
+                } else if (!blockWrite.isFullyWritten()) {
+                    ReplicaWriter.recordUnderReplicated(fileManagerId, fieldId);
+                }
+            } catch (ErrorCode e) {
+                if (null == error)
+                    error = e;
+            }
+        }
+        if (null != error)
+            throw error;
+    }
+
+    private void checkServing() {
+        if (BlockManagerServer.serving() < meta.policy.getManagerNum())
+            throw new ErrorCode(ErrorCode.LACKING_SERVER_FOR_DUPLICATION);
+    }
+
+    // start writes of replicas of unallocated logic block, duplications go to different serving block managers
+    private ReplicaWriter.BlockWrite submitAllocation(int index, byte[] bytes) {
+        checkServing();
+        Set<BlockManagerId> chosenSet = new HashSet<>();
+        for (int j = 0; j < meta.policy.getReplicaNum(); ++j)
+            chosenSet.add(BlockPlacement.choose(chosenSet));
+        return submitReplicas(index, chosenSet, bytes);
+    }
+
+    // start writes of given data as new block on each given block manager
+    private ReplicaWriter.BlockWrite submitReplicas(int index, Set<BlockManagerId> blockManagerIds, byte[] bytes) {
+        ReplicaWriter.BlockWrite blockWrite = new ReplicaWriter.BlockWrite(index);
+        int durability = meta.durability;
+        for (BlockManagerId blockManagerId : blockManagerIds) {
+            IBlockManager blockManager = getBlockManager(blockManagerId);
+            blockWrite.submit(blockManagerId, () -> ((Block) blockManager.newBlock(bytes, durability)).getIndexId());
+        }
+        return blockWrite;
+    }
+
+    // write given data into logic blocks from given one on, unallocated ones are allocated, done by file manager
+    // for remote file so its blocks are written once with their data
+    synchronized void allocateBlocks(int blockStartNum, byte[][] blocks) {
+        if (blocks.length == 0)
+            return;
+
+        // range comes from remote client, file may be truncated by another client meanwhile
+        if (blockStartNum < 0 || blocks.length > meta.extentList.blockNum() - blockStartNum)
+            throw new ErrorCode(ErrorCode.INVALID_ALLOCATE_BLOCK_RANGE, blockStartNum + "+" + blocks.length
+                    + " of " + meta.extentList.blockNum());
+        for (byte[] bytes : blocks) {
+            if (null == bytes)
+                throw new ErrorCode(ErrorCode.NULL_FILE_WRITE_IN_DATA);
+            if (bytes.length > meta.blockSize)
+                throw new ErrorCode(ErrorCode.INVALID_BLOCK_DATA);
+        }
+
+        int blockEndNum = blockStartNum + blocks.length - 1;
+        List<ReplicaWriter.BlockWrite> writeList = new ArrayList<>();
+        ErrorCode error = null;
+        try {
+            for (int i = blockStartNum; i <= blockEndNum; ++i) {
+                byte[] bytes = blocks[i - blockStartNum];
+                if (meta.extentList.isHole(i)) {
+                    if (meta.policy.isErasureCoded())
+                        meta.extentList.set(i, allocateStripeBlock(i, bytes));
+                    else
+                        writeList.add(submitAllocation(i, bytes));
+                } else {
+                    writeList.add(submitReplicas(i, meta.extentList.get(i).keySet(), bytes));
+                }
+            }
+        } catch (ErrorCode e) {
+            error = e;
+        }
+        collectWrites(meta.extentList, writeList, error);
+
+        // update parity of written stripes
+        if (meta.policy.isErasureCoded()) {
+            int dataNum = meta.policy.getDataNum();
+            for (int stripe = blockStartNum / dataNum; stripe <= blockEndNum / dataNum; ++stripe)
+                encodeStripe(stripe);
+        }
+    }
+
+    // buffer data into dirty blocks of this handle, only blocks the write reaches are read or written
     private void writeData(byte[] data) {
         long newPos = meta.pointer + data.length;
         if (newPos > meta.size) {
-            setSize(newPos);
+            resize(newPos);
+            isGrown = isClient;
         }
 
         long writeLength = data.length;
+        if (writeLength == 0)
+            return;
 
-        List<HashMap<BlockManagerId, BlockId>> logicBlockList = meta.logicBlockList;
+        int blockStartNum = (int) (meta.pointer / meta.blockSize);
+        int blockEndNum = (int) ((meta.pointer + writeLength - 1) / meta.blockSize);
+        int startOffset = (int) (meta.pointer % meta.blockSize);
 
-        int blockStartNum = (int) meta.pointer / meta.blockSize;
-        int startOffset = (int) meta.pointer % meta.blockSize;
+        BlockExtentList extentList = meta.extentList;
+        if (null == dirtyMap)
+            dirtyMap = new TreeMap<>();
 
-        for (int i = blockStartNum; i < logicBlockList.size(); ++i) {
-            HashMap<BlockManagerId, BlockId> logicBlockMap = logicBlockList.get(i);
+        for (int i = blockStartNum; i <= blockEndNum; ++i) {
+            int startIndex = (i == blockStartNum) ? startOffset : 0;
+            int dataOffset = (int) ((long) i * meta.blockSize + startIndex - meta.pointer);
+            int copyLength = (int) Math.min(meta.blockSize - startIndex, writeLength - dataOffset);
 
-            for (BlockManagerId blockManagerId : logicBlockMap.keySet()) {
-                int iter = 0;
-                IBlockManager blockManager;
-                Id blockId;
-                if (isClient) {
-                    BlockManagerRMIId blockManagerRMIId = new BlockManagerRMIId(hostName, port, blockManagerId.getId());
-                    blockManager = BlockManagerClient.getClient(blockManagerRMIId);
-                    blockId = new BlockClientId(logicBlockMap.get(blockManagerId).getId());
+            // block already dirty is updated in place, others are read once unless wholly overwritten
+            byte[] bytes = dirtyMap.get(i);
+            if (null == bytes) {
+                if (copyLength == meta.blockSize || extentList.isHole(i)) {
+                    bytes = new byte[meta.blockSize];
                 } else {
-                    blockManager = BlockManagerServer.getServer(blockManagerId);
-                    blockId = logicBlockMap.get(blockManagerId);
-                }
-                byte[] bytes = blockManager.getBlock(blockId).read();
-                int startIndex = (i == blockStartNum) ? startOffset : 0;
-                for (int j = startIndex; j < bytes.length && iter < writeLength; ++j) {
-                    bytes[j] = data[iter++] ;
+                    bytes = readBlock(extentList.get(i));
+                    if (null == bytes && meta.policy.isErasureCoded())
+                        bytes = reconstructBlock(i);
+                    if (null == bytes)
+                        throw new ErrorCode(ErrorCode.UNAVAILABLE_LOGIC_BLOCK);
+                    // copy before modifying, block data may be cached and shared by other files
+                    bytes = bytes.clone();
                 }
-                Block block = (Block) blockManager.newBlock(bytes);
-                logicBlockMap.put(blockManagerId, block.getIndexId());
+                dirtyMap.put(i, bytes);
             }
+            System.arraycopy(data, dataOffset, bytes, startIndex, copyLength);
         }
 
         // update pointer
         meta.pointer += writeLength;
+
+        if ((long) dirtyMap.size() * meta.blockSize > ConfigConstants.WRITE_BUFFER_MAX_BYTES)
+            writeDirtyBlocks();
+    }
+
+    private boolean hasDirtyBlocks() {
+        return null != dirtyMap && !dirtyMap.isEmpty();
+    }
+
+    // write dirty blocks and replicas not yet in meta, for file evicted from file manager cache or left by
+    // stopped file manager
+    synchronized void flushBuffered() {
+        if (hasDirtyBlocks() || (null != lateWriteList && !lateWriteList.isEmpty()))
+            flush();
+    }
+
+    // write dirty blocks of this handle with duplication, blocks are kept dirty if any write fails
+    private void writeDirtyBlocks() {
+        if (!hasDirtyBlocks())
+            return;
+
+        // prefetched blocks are rewritten
+        if (null != readahead)
+            readahead.clear();
+
+        // unallocated blocks of remote file are written by its file manager
+        Map<Integer, byte[]> writeMap = isClient ? allocateRemoteBlocks() : dirtyMap;
+
+        BlockExtentList extentList = meta.extentList;
+
+        // replica writes of all blocks are issued before any is waited for
+        List<ReplicaWriter.BlockWrite> writeList = new ArrayList<>();
+        ErrorCode error = null;
+        try {
+            for (Map.Entry<Integer, byte[]> entry : writeMap.entrySet()) {
+                int i = entry.getKey();
+                byte[] bytes = entry.getValue();
+
+                // first write of unallocated block allocates its replicas
+                if (extentList.isHole(i)) {
+                    if (meta.policy.isErasureCoded())
+                        extentList.set(i, allocateStripeBlock(i, bytes));
+                    else
+                        writeList.add(submitAllocation(i, bytes));
+                    continue;
+                }
+                writeList.add(submitReplicas(i, extentList.get(i).keySet(), bytes));
+            }
+        } catch (ErrorCode e) {
+            error = e;
+        }
+        collectWrites(extentList, writeList, error);
+
+        // update parity of written stripes
+        if (meta.policy.isErasureCoded()) {
+            int dataNum = meta.policy.getDataNum();
+            int lastStripe = -1;
+            for (int i : writeMap.keySet()) {
+                if (i / dataNum != lastStripe) {
+                    lastStripe = i / dataNum;
+                    encodeStripe(lastStripe);
+                }
+            }
+        }
+
+        dirtyMap.clear();
+    }
+
+    // set grown size on file manager of remote file and let it write runs of dirty unallocated blocks, dirty
+    // blocks left for this handle to write are returned
+    private Map<Integer, byte[]> allocateRemoteBlocks() {
+        AlphaFileManagerRMIId fileManagerClientId = new AlphaFileManagerRMIId(hostName, port, fileManagerId.getId());
+        AlphaFileManagerClient fileManager = AlphaFileManagerClient.getClient(fileManagerClientId);
+        long pointer = meta.pointer;
+
+        if (isGrown) {
+            meta = fileManager.setRemoteFileSize(fieldId, meta.size).meta;
+            meta.pointer = pointer;
+            isGrown = false;
+        }
+
+        Map<Integer, byte[]> writeMap = new TreeMap<>();
+        List<byte[]> runList = new ArrayList<>();
+        int runStart = -1;
+        for (Map.Entry<Integer, byte[]> entry : dirtyMap.entrySet()) {
+            int i = entry.getKey();
+            if (!meta.extentList.isHole(i)) {
+                writeMap.put(i, entry.getValue());
+                continue;
+            }
+            if (!runList.isEmpty() && i != runStart + runList.size()) {
+                meta = fileManager.allocateRemoteBlocks(fieldId, runStart, runList.toArray(new byte[0][])).meta;
+                meta.pointer = pointer;
+                runList.clear();
+            }
+            if (runList.isEmpty())
+                runStart = i;
+            runList.add(entry.getValue());
+        }
+        if (!runList.isEmpty()) {
+            meta = fileManager.allocateRemoteBlocks(fieldId, runStart, runList.toArray(new byte[0][])).meta;
+            meta.pointer = pointer;
+        }
+        return writeMap;
+    }
+
+    // write dirty blocks and meta referencing them
+    private void flush() {
+        writeDirtyBlocks();
+        settleLateWrites(true);
+        writeMeta(meta);
+    }
+
+    // add replicas written after their block write returned to logic blocks not rewritten since, blocks left
+    // short of replicas are recorded for re-replication
+    private void settleLateWrites(boolean isWaiting) {
+        if (null == lateWriteList)
+            return;
+
+        Iterator<ReplicaWriter.BlockWrite> iterator = lateWriteList.iterator();
+        while (iterator.hasNext()) {
+            ReplicaWriter.BlockWrite blockWrite = iterator.next();
+            if (!isWaiting && !blockWrite.isSettled())
+                continue;
+            Map<BlockManagerId, BlockId> writtenMap = blockWrite.settle();
+            iterator.remove();
+
+            int index = blockWrite.getIndex();
+            if (index >= meta.extentList.blockNum() || !meta.extentList.get(index).equals(blockWrite.getAckedMap()))
+                continue;
+            meta.extentList.set(index, writtenMap);
+            if (!blockWrite.isFullyWritten())
+                ReplicaWriter.recordUnderReplicated(fileManagerId, fieldId);
+        }
+    }
+
+    // add replicas to logic blocks left short of them, copied from a written replica, false if some stay short
+    synchronized boolean reReplicate() {
+        if (meta.policy.isErasureCoded())
+            return true;
+
+        int replicaNum = meta.policy.getReplicaNum();
+        boolean isChanged = false;
+        boolean isShort = false;
+        for (int i = 0; i < meta.extentList.blockNum(); ++i) {
+            if (meta.extentList.isHole(i))
+                continue;
+            Map<BlockManagerId, BlockId> replicaMap = new LinkedHashMap<>(meta.extentList.get(i));
+            if (replicaMap.size() >= replicaNum)
+                continue;
+
+            try {
+                byte[] bytes = readBlock(replicaMap);
+                if (null == bytes) {
+                    isShort = true;
+                    continue;
+                }
+                while (replicaMap.size() < replicaNum) {
+                    BlockManagerId blockManagerId = BlockPlacement.choose(replicaMap.keySet());
+                    Block block = (Block) getBlockManager(blockManagerId).newBlock(bytes, meta.durability);
+                    replicaMap.put(blockManagerId, block.getIndexId());
+                }
+                meta.extentList.set(i, replicaMap);
+                isChanged = true;
+            } catch (ErrorCode e) {
+                isShort = true;
+            }
+        }
+
+        if (isChanged)
+            writeMeta(meta);
+        return !isShort;
+    }
+
+    // parity shards of given stripe computed from its data blocks, unallocated blocks count as zeros
+    private byte[][] computeParity(int stripe) {
+        int dataNum = meta.policy.getDataNum();
+        int parityNum = meta.policy.getParityNum();
+
+        byte[][] dataShards = new byte[dataNum][];
+        for (int q = 0; q < dataNum; ++q) {
+            int index = stripe * dataNum + q;
+            dataShards[q] = readShard(meta.extentList, index);
+            if (null == dataShards[q])
+                dataShards[q] = reconstructBlock(index);
+        }
+        return new ReedSolomon(dataNum, parityNum).encode(dataShards);
+    }
+
+    // rewrite parity blocks of given stripe from its data blocks
+    private void encodeStripe(int stripe) {
+        int parityNum = meta.policy.getParityNum();
+
+        // parity of stripes never written stays unallocated
+        meta.parityList.addHoles(stripe * parityNum - meta.parityList.blockNum());
+
+        byte[][] parityShards = computeParity(stripe);
+        for (int p = 0; p < parityNum; ++p) {
+            int index = stripe * parityNum + p;
+            BlockManagerId blockManagerId = (index < meta.parityList.blockNum() && !meta.parityList.isHole(index))
+                    ? meta.parityList.get(index).keySet().iterator().next()
+                    : chooseStripeManager(stripe);
+
+            Block block = (Block) getBlockManager(blockManagerId).newBlock(parityShards[p], meta.durability);
+            Map<BlockManagerId, BlockId> parityMap = new LinkedHashMap<>();
+            parityMap.put(blockManagerId, block.getIndexId());
+            meta.parityList.set(index, parityMap);
+        }
+    }
+
+    // rebuild data of unavailable logic block from rest of its stripe
+    private byte[] reconstructBlock(int index) {
+        int dataNum = meta.policy.getDataNum();
+        int parityNum = meta.policy.getParityNum();
+        int stripe = index / dataNum;
+
+        byte[][] shards = new byte[dataNum + parityNum][];
+        int availableNum = 0;
+        for (int q = 0; q < dataNum && availableNum < dataNum; ++q) {
+            int dataIndex = stripe * dataNum + q;
+            if (dataIndex == index)
+                continue;
+            shards[q] = readShard(meta.extentList, dataIndex);
+            if (null != shards[q])
+                ++availableNum;
+        }
+        for (int p = 0; p < parityNum && availableNum < dataNum; ++p) {
+            shards[dataNum + p] = readShard(meta.parityList, stripe * parityNum + p);
+            if (null != shards[dataNum + p])
+                ++availableNum;
+        }
+
+        if (availableNum < dataNum)
+            throw new ErrorCode(ErrorCode.UNAVAILABLE_LOGIC_BLOCK);
+        return new ReedSolomon(dataNum, parityNum).decode(shards)[index - stripe * dataNum];
+    }
+
+    // block managers holding data or parity blocks of given stripe
+    private Set<BlockManagerId> getStripeManagers(int stripe) {
+        int dataNum = meta.policy.getDataNum();
+        int parityNum = meta.policy.getParityNum();
+
+        Set<BlockManagerId> stripeManagers = new HashSet<>();
+        for (int index = stripe * dataNum; index < Math.min((stripe + 1) * dataNum, meta.extentList.blockNum()); ++index)
+            stripeManagers.addAll(meta.extentList.get(index).keySet());
+        for (int index = stripe * parityNum; index < Math.min((stripe + 1) * parityNum, meta.parityList.blockNum()); ++index)
+            stripeManagers.addAll(meta.parityList.get(index).keySet());
+        return stripeManagers;
+    }
+
+    // choose serving block manager not used by given stripe yet
+    private BlockManagerId chooseStripeManager(int stripe) {
+        return BlockPlacement.choose(getStripeManagers(stripe));
     }
 
     // get meta object from meta file
@@ -227,52 +781,100 @@ public class AlphaFile implements IFile, Serializable {
     private byte[] readData(int length) {
         int readLength = (int) Math.min(length, meta.size - meta.pointer);
 
-        List<HashMap<BlockManagerId, BlockId>> logicBlockList = meta.logicBlockList;
+        BlockExtentList extentList = meta.extentList;
 
         byte[] data = new byte[readLength];
-        int blockStartNum = (int) meta.pointer / meta.blockSize;
-        int startOffset = (int) meta.pointer % meta.blockSize;
-        int iter = 0;
-
-        for (int i = blockStartNum; i < logicBlockList.size(); ++i) {
-            HashMap<BlockManagerId, BlockId> logicBlockMap = logicBlockList.get(i);
-
-            boolean isAvailable = true;
-            for (BlockManagerId blockManagerId : logicBlockMap.keySet()) {
-                int tempIter = iter;
-
-                try {
-                    IBlockManager blockManager;
-                    Id blockId;
-                    if (isClient) {
-                        BlockManagerRMIId blockManagerRMIId = new BlockManagerRMIId(hostName, port, blockManagerId.getId());
-                        blockManager = BlockManagerClient.getClient(blockManagerRMIId);
-                        blockId = new BlockClientId(logicBlockMap.get(blockManagerId).getId());
-                    } else {
-                        blockManager = BlockManagerServer.getServer(blockManagerId);
-                        blockId = logicBlockMap.get(blockManagerId);
-                    }
+        if (readLength == 0)
+            return data;
 
-                    Block block = (Block) blockManager.getBlock(blockId);
-                    byte[] bytes = block.read();
-                    int startIndex = (i == blockStartNum) ? startOffset : 0;
-                    for (int j = startIndex; j < bytes.length && tempIter < readLength; ++j) {
-                        data[tempIter++] = bytes[j];
-                    }
-                    isAvailable = true;
-                    iter = tempIter;
-                    break;
-                } catch (Exception e) {
-                    isAvailable = false;
-                }
+        int blockStartNum = (int) (meta.pointer / meta.blockSize);
+        int blockEndNum = (int) Math.min((meta.pointer + readLength - 1) / meta.blockSize, extentList.blockNum() - 1);
+        int startOffset = (int) (meta.pointer % meta.blockSize);
+
+        Readahead readahead = getReadahead();
+        if (null != readahead)
+            readahead.onRead(meta.pointer, readLength);
+
+        // blocks of range are fetched in parallel, each one copied straight into its own part of data
+        List<Runnable> fetchList = new ArrayList<>();
+        for (int i = blockStartNum; i <= blockEndNum; ++i) {
+            // unallocated block reads as zeros, data array is already zero
+            if (extentList.isHole(i) && (null == dirtyMap || !dirtyMap.containsKey(i)))
+                continue;
+
+            int index = i;
+            int startIndex = (i == blockStartNum) ? startOffset : 0;
+            int dataOffset = (int) ((long) i * meta.blockSize + startIndex - meta.pointer);
+            int copyLength = Math.min(meta.blockSize - startIndex, readLength - dataOffset);
+            Map<BlockManagerId, BlockId> logicBlockMap = extentList.get(i);
+            fetchList.add(() -> fetchBlock(readahead, index, logicBlockMap, startIndex, data, dataOffset, copyLength));
+        }
+
+        List<Future<?>> futureList = new ArrayList<>();
+        try {
+            if (fetchList.size() > 1) {
+                for (Runnable fetch : fetchList)
+                    futureList.add(BlockFetcher.submit(fetch));
             }
-            if (!isAvailable)
-                throw new ErrorCode(ErrorCode.UNAVAILABLE_LOGIC_BLOCK);
+            // blocks ahead are fetched while this read is served
+            if (null != readahead)
+                readahead.prefetchAfter(blockEndNum, extentList, logicBlockMap -> BlockFetcher.trySubmit(() -> readBlock(logicBlockMap)));
+            // single block is read by caller, no thread hop
+            if (fetchList.size() == 1)
+                fetchList.get(0).run();
+        } finally {
+            BlockFetcher.awaitAll(futureList);
         }
+
         meta.pointer += readLength;
         return data;
     }
 
+    private Readahead getReadahead() {
+        if (null == readahead && ConfigConstants.READAHEAD)
+            readahead = new Readahead(meta.blockSize);
+        return readahead;
+    }
+
+    // copy given part of logic block into data at given offset, taken from dirty blocks of this handle or
+    // readahead window first
+    private void fetchBlock(Readahead readahead, int index, Map<BlockManagerId, BlockId> logicBlockMap, int startIndex,
+                            byte[] data, int dataOffset, int copyLength) {
+        byte[] bytes = (null != dirtyMap) ? dirtyMap.get(index) : null;
+        if (null == bytes && null != readahead)
+            bytes = readahead.take(index, logicBlockMap);
+        if (null == bytes && copyCached(logicBlockMap, startIndex, data, dataOffset, copyLength))
+            return;
+        if (null == bytes)
+            bytes = readBlock(logicBlockMap);
+
+        // rebuild from stripe when no replica is available
+        if (null == bytes && meta.policy.isErasureCoded())
+            bytes = reconstructBlock(index);
+        if (null == bytes)
+            throw new ErrorCode(ErrorCode.UNAVAILABLE_LOGIC_BLOCK);
+
+        System.arraycopy(bytes, startIndex, data, dataOffset, Math.min(copyLength, bytes.length - startIndex));
+    }
+
+    // copy part of logic block straight from block cache of replica read would ask first, false if it is not
+    // cached locally or fails, then block is read through its replicas
+    private boolean copyCached(Map<BlockManagerId, BlockId> logicBlockMap, int startIndex, byte[] data, int dataOffset,
+                               int copyLength) {
+        if (isClient || null == logicBlockMap || logicBlockMap.isEmpty())
+            return false;
+
+        BlockManagerId blockManagerId = ReplicaSelector.order(logicBlockMap.keySet()).get(0);
+        if (!isCachedLocally(blockManagerId, logicBlockMap))
+            return false;
+        try {
+            BlockManagerServer.getServer(blockManagerId).readPart(logicBlockMap.get(blockManagerId), startIndex, data, dataOffset, copyLength);
+            return true;
+        } catch (ErrorCode e) {
+            return false;
+        }
+    }
+
     // get proper pointer position
     private long getWhere(int where) {
         switch (where) {
@@ -303,22 +905,26 @@ public class AlphaFile implements IFile, Serializable {
     }
 
     @Override
-    public byte[] read(int length) {
+    public synchronized byte[] read(int length) {
         if (length < 0)
             throw new ErrorCode(ErrorCode.INVALID_READ_LENGTH);
         return readData(length);
     }
 
     @Override
-    public void write(byte[] bytes) {
+    public synchronized void write(byte[] bytes) {
         if (null == bytes)
             throw new ErrorCode(ErrorCode.NULL_FILE_WRITE_IN_DATA);
         writeData(bytes);
-        writeMeta(meta);
+        settleLateWrites(false);
+
+        // meta is written with dirty blocks once they are flushed
+        if (!hasDirtyBlocks())
+            writeMeta(meta);
     }
 
     @Override
-    public long move(long offset, int where) {
+    public synchronized long move(long offset, int where) {
         long base = getWhere(where);
         if (base == -1)
             throw new ErrorCode(ErrorCode.INVALID_WHERE_ARG);
@@ -333,51 +939,86 @@ public class AlphaFile implements IFile, Serializable {
     }
 
     @Override
-    public void close() {
-        writeMeta(meta);
+    public synchronized void close() {
+        flush();
     }
 
     @Override
-    public long size() {
+    public synchronized long size() {
         return meta.size;
     }
 
     @Override
-    public void setSize(long newSize) {
+    public synchronized void setSize(long newSize) {
         if (newSize < 0)
             throw new ErrorCode(ErrorCode.NEGATIVE_FILE_NEW_SIZE);
 
+        // size is changed on flushed blocks
+        if (hasDirtyBlocks())
+            flush();
+
         if (isClient) {
             AlphaFileManagerRMIId fileManagerClientId = new AlphaFileManagerRMIId(hostName, port, fileManagerId.getId());
             AlphaFileManagerClient fileManager = AlphaFileManagerClient.getClient(fileManagerClientId);
             meta = fileManager.setRemoteFileSize(fieldId, newSize).meta;
+            isGrown = false;
             return;
         }
 
+        resize(newSize);
+    }
+
+    // change size of local meta, truncated blocks are dropped and new ones left unallocated
+    private void resize(long newSize) {
         meta.size = newSize;
-        int ceil = (meta.size == 0) ? 0 : (int) meta.size / meta.blockSize + 1;
-        if (ceil < meta.logicBlockList.size()) {
+        int ceil = (meta.size == 0) ? 0 : (int) (meta.size / meta.blockSize) + 1;
+        RedundancyPolicy policy = meta.policy;
+        if (ceil < meta.extentList.blockNum()) {
             // truncate redundant blocks
-            meta.logicBlockList = meta.logicBlockList.subList(0, ceil);
-        } else if (ceil > meta.logicBlockList.size()) {
-            // create placeholders for data writing
-            int newBlockNum = ceil - meta.logicBlockList.size();
-            for (int i = 0; i < newBlockNum; ++i) {
-                HashMap<BlockManagerId, BlockId> newBlockMap = new HashMap<>();
-                meta.logicBlockList.add(newBlockMap);
-                for (int j = 0; j < ConfigConstants.DUPLICATION_NUM; ++j) {
-                    // duplications are allocated to different serving block managers
-                    BlockManager blockManager;
-                    do {
-                        blockManager = BlockManagerServer.getRandomServingBlockManager();
-                    } while (newBlockMap.containsKey(blockManager.getManagerId()));
-                    Block block = (Block) blockManager.newEmptyBlock(meta.blockSize);
-                    newBlockMap.put(blockManager.getManagerId(), block.getIndexId());
-                }
+            meta.extentList.truncate(ceil);
+
+            // drop parity of removed stripes, last stripe lost some data blocks
+            if (policy.isErasureCoded()) {
+                int stripeNum = (ceil + policy.getDataNum() - 1) / policy.getDataNum();
+                int lastParity = (stripeNum - 1) * policy.getParityNum();
+                meta.parityList.truncate(stripeNum * policy.getParityNum());
+                if (ceil % policy.getDataNum() != 0 && lastParity < meta.parityList.blockNum() && !meta.parityList.isHole(lastParity))
+                    encodeStripe(stripeNum - 1);
             }
+        } else if (ceil > meta.extentList.blockNum()) {
+            // unallocated placeholders, replicas are allocated on first write
+            meta.extentList.addHoles(ceil - meta.extentList.blockNum());
         }
     }
 
+    public synchronized RedundancyPolicy getRedundancyPolicy() {
+        return meta.policy;
+    }
+
+    // choose how blocks survive manager failures, only before any block is allocated
+    public synchronized void setRedundancyPolicy(RedundancyPolicy policy) {
+        if (null == policy)
+            throw new ErrorCode(ErrorCode.INVALID_REDUNDANCY_POLICY, "null");
+        if (meta.extentList.blockNum() != 0)
+            throw new ErrorCode(ErrorCode.NON_EMPTY_FILE_POLICY);
+
+        meta.policy = policy;
+        writeMeta(meta);
+    }
+
+    public synchronized int getDurability() {
+        return meta.durability;
+    }
+
+    // choose how durable block writes of this file are when write returns
+    public synchronized void setDurability(int durability) {
+        if (!IBlockManager.isValidDurability(durability))
+            throw new ErrorCode(ErrorCode.INVALID_DURABILITY, String.valueOf(durability));
+
+        meta.durability = durability;
+        writeMeta(meta);
+    }
+
     @Override
     public void copyTo(IFile dst) {
         if (null == dst)
@@ -387,19 +1028,93 @@ public class AlphaFile implements IFile, Serializable {
             throw new ErrorCode(ErrorCode.INVALID_COPY_DST_FILE);
 
         AlphaFile copyDst = (AlphaFile) dst;
+        Meta copyMeta;
+        synchronized (this) {
+            if (hasDirtyBlocks())
+                flush();
+            copyMeta = copyMeta(meta);
+        }
+
+        // copy meta info immediately, blocks buffered by destination are overwritten by copy
+        synchronized (copyDst) {
+            copyDst.dirtyMap = null;
+            copyDst.lateWriteList = null;
+            copyDst.readahead = null;
+            copyDst.isGrown = false;
+            copyDst.meta = copyMeta;
+            copyDst.writeMeta(copyMeta);
+        }
+    }
+
+    // own copy of meta, so files never share one
+    private static Meta copyMeta(Meta meta) {
+        try {
+            return (Meta) ByteUtils.serializeToObject(ByteUtils.objectToSerialize(meta));
+        } catch (IOException | ClassNotFoundException e) {
+            throw new ErrorCode(ErrorCode.FILE_META_FILE_INVALID);
+        }
+    }
+
+    // rewrite corrupt blocks of given manager referenced by this file from healthy replicas or rest of stripe,
+    // repaired ids are removed from set
+    synchronized void repairBlocks(BlockManagerId blockManagerId, LongBitmap corruptSet) {
+        BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
+        List<Long> corruptList = new ArrayList<>();
+        corruptSet.forEach(corruptList::add);
+
+        for (long blockId : corruptList) {
+            byte[] data = null;
+            try {
+                int index = meta.extentList.indexOf(blockManagerId, blockId);
+                if (index >= 0) {
+                    if (meta.policy.isErasureCoded()) {
+                        data = reconstructBlock(index);
+                    } else {
+                        Map<BlockManagerId, BlockId> replicaMap = new LinkedHashMap<>(meta.extentList.get(index));
+                        replicaMap.remove(blockManagerId);
+                        data = readBlock(replicaMap);
+                    }
+                } else {
+                    index = meta.parityList.indexOf(blockManagerId, blockId);
+                    if (index >= 0) {
+                        int parityNum = meta.policy.getParityNum();
+                        data = computeParity(index / parityNum)[index % parityNum];
+                    }
+                }
+
+                if (null != data) {
+                    blockManagerServer.repairBlock(new BlockId(blockId), data);
+                    corruptSet.remove(blockId);
+                }
+            } catch (ErrorCode e) {
+                // no healthy copy available now, found again by next scrub pass
+            }
+        }
+    }
 
-        // copy meta info immediately
-        copyDst.meta = meta;
-        copyDst.close();
+    // record blocks referenced by this file into mark map
+    synchronized void markBlocks(Map<BlockManagerId, LongBitmap> markMap) {
+        meta.extentList.forEach((blockManagerId, blockId) ->
+                markMap.computeIfAbsent(blockManagerId, k -> new LongBitmap()).add(blockId));
+        meta.parityList.forEach((blockManagerId, blockId) ->
+                markMap.computeIfAbsent(blockManagerId, k -> new LongBitmap()).add(blockId));
+
+        // replicas written late are referenced once settled
+        if (null != lateWriteList) {
+            for (ReplicaWriter.BlockWrite blockWrite : lateWriteList) {
+                blockWrite.getWrittenMap().forEach((blockManagerId, blockId) ->
+                        markMap.computeIfAbsent(blockManagerId, k -> new LongBitmap()).add(blockId.getId()));
+            }
+        }
     }
 
-    public void setRemote(String hostName, int port) {
+    public synchronized void setRemote(String hostName, int port) {
         this.isClient = true;
         this.hostName = hostName;
         this.port = port;
     }
 
-    public void setLocal() {
+    public synchronized void setLocal() {
         this.isClient = false;
         this.hostName = null;
         this.port = 0;
@@ -1,5 +1,6 @@
 package file;
 
+import constant.ConfigConstants;
 import constant.PathConstants;
 import id.Id;
 import util.ByteUtils;
@@ -15,8 +16,14 @@ import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AlphaFileManager implements IFileManager {
+    // meta file of a manager is read and rewritten by concurrent requests, one lock per manager
+    private static final ConcurrentHashMap<AlphaFileManagerId, Object> metaLockMap = new ConcurrentHashMap<>();
+    // meta loaded once per manager, lookups no longer deserialize the whole file map, guarded by meta lock
+    private static final ConcurrentHashMap<AlphaFileManagerId, Meta> metaCacheMap = new ConcurrentHashMap<>();
+
     private AlphaFileManagerId fileManagerId;
 
     // file manager meta info
@@ -104,16 +111,26 @@ public class AlphaFileManager implements IFileManager {
         } catch (IOException e) {
             throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
         }
+        metaCacheMap.put(fileManagerId, meta);
+    }
+
+    private Object getMetaLock() {
+        return metaLockMap.computeIfAbsent(fileManagerId, id -> new Object());
     }
 
-    // get meta object from meta file
+    // get meta object from meta file, caller must not modify it
     private Meta readMeta() {
+        Meta cachedMeta = metaCacheMap.get(fileManagerId);
+        if (null != cachedMeta)
+            return cachedMeta;
+
         File file = new File(PathConstants.FILE_MANAGER_PATH, fileManagerId.getId() + PathConstants.META_SUFFIX);
 
         try {
             ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(file));
             Meta meta = (Meta)inputStream.readObject();
             inputStream.close();
+            metaCacheMap.put(fileManagerId, meta);
             return meta;
         } catch (IOException e) {
             throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
@@ -142,17 +159,24 @@ public class AlphaFileManager implements IFileManager {
 
         FieldId fieldId = (FieldId) id;
 
-        Meta meta = readMeta();
-        Map<FieldId, AlphaFileId> fileMap = meta.fileMap;
+        AlphaFileId fileId;
+        synchronized (getMetaLock()) {
+            fileId = readMeta().fileMap.get(fieldId);
+        }
 
-        if (!fileMap.containsKey(fieldId))
+        if (null == fileId)
             throw new ErrorCode(ErrorCode.UNKNOWN_FIELD_ID, fieldId.getId());
         else
-            return new AlphaFile(this.fileManagerId, fileMap.get(fieldId), fieldId);
+            return new AlphaFile(this.fileManagerId, fileId, fieldId);
     }
 
     @Override
     public AlphaFile newFile(Id id) {
+        return newFile(id, ConfigConstants.BLOCK_SIZE);
+    }
+
+    @Override
+    public AlphaFile newFile(Id id, int blockSize) {
         if (!AlphaFileManagerServer.isServing(fileManagerId)) {
             throw new ErrorCode(ErrorCode.FILE_MANAGER_NOT_SERVING, fileManagerId.getId());
         }
@@ -165,15 +189,24 @@ public class AlphaFileManager implements IFileManager {
 
         FieldId fieldId = (FieldId) id;
 
-        AlphaFile file = new AlphaFile(this.fileManagerId, fieldId);
+        AlphaFile file = new AlphaFile(this.fileManagerId, fieldId, blockSize);
 
-        Meta meta = readMeta();
-        meta.fileMap.put(fieldId, file.getFileId());
-        writeMeta(meta);
+        synchronized (getMetaLock()) {
+            // cached meta stays unchanged if writing fails
+            Map<FieldId, AlphaFileId> fileMap = new HashMap<>(readMeta().fileMap);
+            fileMap.put(fieldId, file.getFileId());
+            writeMeta(new Meta(fileMap));
+        }
 
         return file;
     }
 
+    Map<FieldId, AlphaFileId> getFileMap() {
+        synchronized (getMetaLock()) {
+            return new HashMap<>(readMeta().fileMap);
+        }
+    }
+
     @Override
     public String getPath() {
         return PathConstants.FILE_MANAGER_PATH + "/" + fileManagerId.getId();
@@ -8,11 +8,11 @@ import java.net.MalformedURLException;
 import java.rmi.Naming;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AlphaFileManagerClient implements IFileManager {
     /* Client static controller */
-    private static HashMap<AlphaFileManagerRMIId, AlphaFileManagerClient> clientMap = new HashMap<>();
+    private static ConcurrentHashMap<AlphaFileManagerRMIId, AlphaFileManagerClient> clientMap = new ConcurrentHashMap<>();
 
     public static void listServers() {
         if (clientMap.size() != 0) {
@@ -28,10 +28,8 @@ public class AlphaFileManagerClient implements IFileManager {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_CLIENT_ID);
         }
 
-        if (clientMap.containsKey(fileManagerClientId)) {
+        if (clientMap.containsKey(fileManagerClientId) || null != clientMap.putIfAbsent(fileManagerClientId, new AlphaFileManagerClient(fileManagerClientId))) {
             throw new ErrorCode(ErrorCode.EXISTING_FILE_MANAGER_CLIENT_ID, fileManagerClientId.getHostStr() + "/" + fileManagerClientId.getFileManagerIdStr());
-        } else {
-            clientMap.put(fileManagerClientId, new AlphaFileManagerClient(fileManagerClientId));
         }
     }
 
@@ -40,10 +38,8 @@ public class AlphaFileManagerClient implements IFileManager {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_CLIENT_ID);
         }
 
-        if (!clientMap.containsKey(fileManagerClientId)) {
-            addClient(fileManagerClientId);
-        }
-        return clientMap.get(fileManagerClientId);
+        // concurrent callers share one client
+        return clientMap.computeIfAbsent(fileManagerClientId, AlphaFileManagerClient::new);
     }
 
     public static void removeClient(AlphaFileManagerRMIId fileManagerClientId) {
@@ -51,10 +47,8 @@ public class AlphaFileManagerClient implements IFileManager {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_CLIENT_ID);
         }
 
-        if (!clientMap.containsKey(fileManagerClientId)) {
+        if (null == clientMap.remove(fileManagerClientId)) {
             throw new ErrorCode(ErrorCode.UNKNOWN_FILE_MANAGER_CLIENT_ID, fileManagerClientId.getHostStr() + "/" + fileManagerClientId.getFileManagerIdStr());
-        } else {
-            clientMap.remove(fileManagerClientId);
         }
     }
 
@@ -97,6 +91,11 @@ public class AlphaFileManagerClient implements IFileManager {
 
     @Override
     public AlphaFile newFile(Id id) {
+        return newFile(id, ConfigConstants.BLOCK_SIZE);
+    }
+
+    @Override
+    public AlphaFile newFile(Id id, int blockSize) {
         if (null == id)
             throw new ErrorCode(ErrorCode.NULL_FIELD_ID);
 
@@ -105,7 +104,7 @@ public class AlphaFileManagerClient implements IFileManager {
 
         try {
             FieldId fieldId = (FieldId) id;
-            AlphaFile file = (AlphaFile) fileManagerRMI.newFileRMI(fieldId);
+            AlphaFile file = (AlphaFile) fileManagerRMI.newFileRMI(fieldId, blockSize);
             file.setRemote(fileManagerRMIId.getHostStr(), fileManagerRMIId.getPort());
             return file;
         } catch (Exception e) {
@@ -140,6 +139,17 @@ public class AlphaFileManagerClient implements IFileManager {
         }
     }
 
+    public AlphaFile allocateRemoteBlocks(FieldId fieldId, int blockStartNum, byte[][] blocks) {
+        try {
+            AlphaFile file = (AlphaFile) fileManagerRMI.allocateRMI(fieldId, blockStartNum, blocks);
+            file.setRemote(fileManagerRMIId.getHostStr(), fileManagerRMIId.getPort());
+            return file;
+        } catch (Exception e) {
+            String serverStr = fileManagerRMIId.toString() + ": ";
+            throw new ErrorCode(ErrorCode.FILE_MANAGER_CLIENT_REMOTE_EXCEPTION, serverStr + e.getMessage());
+        }
+    }
+
     public void writeRemoteFileMeta(FieldId fieldId, IFile file) {
         try {
             fileManagerRMI.writeMetaRMI(fieldId, file);
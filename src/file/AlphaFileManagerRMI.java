@@ -31,14 +31,14 @@ public class AlphaFileManagerRMI extends UnicastRemoteObject implements IFileMan
     }
 
     @Override
-    public IFile newFileRMI(FieldId fieldId) {
+    public IFile newFileRMI(FieldId fieldId, int blockSize) {
         if (null == fieldId)
             throw new ErrorCode(ErrorCode.NULL_FILE_RMI_FIELD_ID_ARG);
 
         AlphaFileManagerId fileManagerId = new AlphaFileManagerId(id.getFileManagerIdStr());
         IFileManager fileManagerServer = AlphaFileManagerServer.getServer(fileManagerId);
 
-        AlphaFile file = (AlphaFile) fileManagerServer.newFile(fieldId);
+        AlphaFile file = (AlphaFile) fileManagerServer.newFile(fieldId, blockSize);
         file.setRemote(ConfigConstants.RMI_SERVER_HOST, ConfigConstants.RMI_SERVER_PORT);
 
         return file;
@@ -61,11 +61,37 @@ public class AlphaFileManagerRMI extends UnicastRemoteObject implements IFileMan
         AlphaFileManagerServer fileManagerServer = AlphaFileManagerServer.getServer(fileManagerId);
 
         AlphaFile file = fileManagerServer.getFile(fieldId);
-        file.setLocal();
-        file.setSize(newSize);
-        file.close();
+        synchronized (file) {
+            file.setLocal();
+            file.setSize(newSize);
+            file.close();
+            file.setRemote(ConfigConstants.RMI_SERVER_HOST, ConfigConstants.RMI_SERVER_PORT);
+        }
+        // cache update may flush evicted files, so it is not done under file lock
+        fileManagerServer.updateCache(fieldId, file);
+
+        return file;
+    }
+
+    @Override
+    public AlphaFile allocateRMI(FieldId fieldId, int blockStartNum, byte[][] blocks) {
+        if (null == fieldId)
+            throw new ErrorCode(ErrorCode.NULL_FILE_RMI_FIELD_ID_ARG);
+        if (null == blocks)
+            throw new ErrorCode(ErrorCode.NULL_FILE_WRITE_IN_DATA);
+
+        AlphaFileManagerId fileManagerId = new AlphaFileManagerId(id.getFileManagerIdStr());
+        AlphaFileManagerServer fileManagerServer = AlphaFileManagerServer.getServer(fileManagerId);
+
+        AlphaFile file = fileManagerServer.getFile(fieldId);
+        synchronized (file) {
+            file.setLocal();
+            file.allocateBlocks(blockStartNum, blocks);
+            file.close();
+            file.setRemote(ConfigConstants.RMI_SERVER_HOST, ConfigConstants.RMI_SERVER_PORT);
+        }
+        // cache update may flush evicted files, so it is not done under file lock
         fileManagerServer.updateCache(fieldId, file);
-        file.setRemote(ConfigConstants.RMI_SERVER_HOST, ConfigConstants.RMI_SERVER_PORT);
 
         return file;
     }
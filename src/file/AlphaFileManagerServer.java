@@ -5,21 +5,42 @@ import constant.PathConstants;
 import id.Id;
 import util.ByteUtils;
 import util.ErrorCode;
+import util.ICachePolicy;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.rmi.Naming;
 import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AlphaFileManagerServer implements IFileManager {
     /* Server static controller */
-    private static HashMap<AlphaFileManagerId, Boolean> switchMap = new HashMap<>();
-    private static HashMap<AlphaFileManagerId, AlphaFileManagerServer> serverMap = new HashMap<>();
+    // read by RMI threads without locking, lifecycle changes are serialized per manager so managers start in parallel
+    private static ConcurrentHashMap<AlphaFileManagerId, Boolean> switchMap = new ConcurrentHashMap<>();
+    private static ConcurrentHashMap<AlphaFileManagerId, AlphaFileManagerServer> serverMap = new ConcurrentHashMap<>();
+    private static ConcurrentHashMap<AlphaFileManagerId, Object> lifecycleLockMap = new ConcurrentHashMap<>();
+
+    private static Object getLifecycleLock(AlphaFileManagerId fileManagerId) {
+        return lifecycleLockMap.computeIfAbsent(fileManagerId, id -> new Object());
+    }
 
     public static void listServers() {
         if (noServing()) {
@@ -33,56 +54,79 @@ public class AlphaFileManagerServer implements IFileManager {
         }
     }
 
+    public static void printCacheStats() {
+        System.out.println("File cache stats:");
+        for (AlphaFileManagerId id : switchMap.keySet()) {
+            AlphaFileManagerServer fileManagerServer = serverMap.get(id);
+            if (null != fileManagerServer)
+                System.out.println(id.getId() + " : " + fileManagerServer.cachePolicy);
+        }
+    }
+
     public static void startManager(AlphaFileManagerId fileManagerId) {
         if (null == fileManagerId) {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_SERVER_ID);
         }
-        if (!switchMap.containsKey(fileManagerId) || !serverMap.containsKey(fileManagerId)) {
+        if (!switchMap.containsKey(fileManagerId)) {
             throw new ErrorCode(ErrorCode.UNKNOWN_FILE_MANAGER_SERVER_ID, fileManagerId.getId());
         }
 
-        AlphaFileManagerServer fileManagerServer = new AlphaFileManagerServer(fileManagerId);
-        fileManagerServer.launchRMI();
+        synchronized (getLifecycleLock(fileManagerId)) {
+            AlphaFileManagerServer fileManagerServer = new AlphaFileManagerServer(fileManagerId);
+            fileManagerServer.launchRMI();
 
-        switchMap.replace(fileManagerId, true);
-        serverMap.replace(fileManagerId, fileManagerServer);
+            fileManagerServer.isServing = true;
+            serverMap.put(fileManagerId, fileManagerServer);
+            switchMap.replace(fileManagerId, true);
+            fileManagerServer.prewarm();
+        }
     }
 
     public static void stopManager(AlphaFileManagerId fileManagerId) {
         if (null == fileManagerId) {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_SERVER_ID);
         }
-        if (!switchMap.containsKey(fileManagerId) || !serverMap.containsKey(fileManagerId)) {
+        if (!switchMap.containsKey(fileManagerId)) {
             throw new ErrorCode(ErrorCode.UNKNOWN_FILE_MANAGER_SERVER_ID, fileManagerId.getId());
         }
 
-        AlphaFileManagerServer fileManagerServer = serverMap.get(fileManagerId);
-        if (null != fileManagerServer)
-            fileManagerServer.terminateRMI();
+        synchronized (getLifecycleLock(fileManagerId)) {
+            AlphaFileManagerServer fileManagerServer = serverMap.get(fileManagerId);
+            if (null != fileManagerServer && fileManagerServer.isServing) {
+                fileManagerServer.isServing = false;
+                fileManagerServer.writeWarmList();
+                fileManagerServer.terminateRMI();
+                // next start loads new files, buffered writes of current ones are flushed first
+                fileManagerServer.flushFiles();
+            }
 
-        switchMap.replace(fileManagerId, false);
+            switchMap.replace(fileManagerId, false);
+        }
     }
 
     public static void restartManager(AlphaFileManagerId fileManagerId) throws ErrorCode {
-        try {
-            stopManager(fileManagerId);
-            startManager(fileManagerId);
-        } catch (Exception e) {
-            stopManager(fileManagerId);
-            throw new ErrorCode(ErrorCode.UNKNOWN_FILE_MANAGER_SERVER_EXCEPTION, fileManagerId.getId());
+        if (null == fileManagerId) {
+            throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_SERVER_ID);
+        }
+
+        synchronized (getLifecycleLock(fileManagerId)) {
+            try {
+                stopManager(fileManagerId);
+                startManager(fileManagerId);
+            } catch (Exception e) {
+                stopManager(fileManagerId);
+                throw new ErrorCode(ErrorCode.UNKNOWN_FILE_MANAGER_SERVER_EXCEPTION, fileManagerId.getId());
+            }
         }
     }
 
+    // managers load their meta independently, so start them in parallel
     public static void startAllManager() {
-        for (AlphaFileManagerId fileManagerId : switchMap.keySet()) {
-            startManager(fileManagerId);
-        }
+        switchMap.keySet().parallelStream().forEach(AlphaFileManagerServer::startManager);
     }
 
     public static void stopAllManager() {
-        for (AlphaFileManagerId fileManagerId : switchMap.keySet()) {
-            stopManager(fileManagerId);
-        }
+        switchMap.keySet().parallelStream().forEach(AlphaFileManagerServer::stopManager);
     }
 
     public static boolean isServing(AlphaFileManagerId fileManagerId) {
@@ -114,7 +158,7 @@ public class AlphaFileManagerServer implements IFileManager {
         return count;
     }
 
-    public static void addServer(AlphaFileManagerId fileManagerId) {
+    public static synchronized void addServer(AlphaFileManagerId fileManagerId) {
         if (null == fileManagerId) {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_SERVER_ID);
         }
@@ -123,10 +167,13 @@ public class AlphaFileManagerServer implements IFileManager {
             throw new ErrorCode(ErrorCode.EXISTING_FILE_MANAGER_SERVER_ID, fileManagerId.getId());
         } else {
             switchMap.put(fileManagerId, false);
-            serverMap.put(fileManagerId, null);
         }
     }
 
+    public static Set<AlphaFileManagerId> getManagerIds() {
+        return new HashSet<>(switchMap.keySet());
+    }
+
     public static AlphaFileManagerServer getServer(AlphaFileManagerId fileManagerId) {
         if (null == fileManagerId) {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_SERVER_ID);
@@ -140,7 +187,7 @@ public class AlphaFileManagerServer implements IFileManager {
     }
 
     /* Initialize local file managers */
-    public static void init() {
+    public static synchronized void init() {
         File fileManagerDir = new File(PathConstants.FILE_MANAGER_PATH);
         if (fileManagerDir.exists()) {
             for (int i = 1; i <= ConfigConstants.FILE_MANAGER_NUM; ++i) {
@@ -179,12 +226,18 @@ public class AlphaFileManagerServer implements IFileManager {
     /* Server object */
     private final AlphaFileManagerId fileManagerId;
     private IFileManagerRMI fileManagerRMI;
-    private final HashMap<Id, AlphaFile> fileCache;
+    private final ConcurrentHashMap<Id, AlphaFile> fileCache;
+    // files evicted or refused by cache, returned again while still in use so a field id has one file
+    private final ConcurrentHashMap<Id, WeakReference<AlphaFile>> evictedMap;
+    private final ICachePolicy<Id> cachePolicy;     // guards its own updates together with cache membership
+    private volatile boolean isServing;
 
     // create new file manager server
     public AlphaFileManagerServer() {
         this.fileManagerId = new AlphaFileManager().getManagerId();
-        this.fileCache = new HashMap<>();
+        this.fileCache = new ConcurrentHashMap<>();
+        this.evictedMap = new ConcurrentHashMap<>();
+        this.cachePolicy = ICachePolicy.getPolicy(ConfigConstants.FILE_CACHE_POLICY, ConfigConstants.FILE_MANAGER_SERVER_CACHE_SIZE);
     }
 
     // get existing block manager server
@@ -193,28 +246,118 @@ public class AlphaFileManagerServer implements IFileManager {
             throw new ErrorCode(ErrorCode.NULL_FILE_MANAGER_ARGUMENT);
 
         this.fileManagerId = new AlphaFileManager(fileManagerId).getManagerId();
-        this.fileCache = new HashMap<>();
+        this.fileCache = new ConcurrentHashMap<>();
+        this.evictedMap = new ConcurrentHashMap<>();
+        this.cachePolicy = ICachePolicy.getPolicy(ConfigConstants.FILE_CACHE_POLICY, ConfigConstants.FILE_MANAGER_SERVER_CACHE_SIZE);
     }
 
     public void updateCache(Id fieldId, AlphaFile file) {
-        // hit or remote update
-        if (fileCache.containsKey(fieldId)) {
-            fileCache.replace(fieldId, file);
-            return;
+        cacheFile(fieldId, file, true);
+    }
+
+    // insert file into cache, file already cached for field id is replaced or returned instead, evicted and
+    // refused files are flushed outside policy lock since writes hold file lock while updating cache
+    private AlphaFile cacheFile(Id fieldId, AlphaFile file, boolean isReplacing) {
+        List<AlphaFile> evictedList = new ArrayList<>();
+        synchronized (cachePolicy) {
+            // hit or remote update
+            AlphaFile cachedFile = fileCache.get(fieldId);
+            if (null != cachedFile) {
+                if (!isReplacing)
+                    return cachedFile;
+                fileCache.replace(fieldId, file);
+                return file;
+            }
+
+            // miss, policy may evict other files or not admit this one, they are put into evicted map before
+            // they leave cache, so no second file of same field id is loaded meanwhile
+            fileCache.put(fieldId, file);
+            evictedMap.remove(fieldId);
+            cachePolicy.onMiss(fieldId);
+            cachePolicy.onInsert(fieldId, evictedId -> {
+                AlphaFile evictedFile = fileCache.get(evictedId);
+                if (null != evictedFile) {
+                    evictedMap.put(evictedId, new WeakReference<>(evictedFile));
+                    fileCache.remove(evictedId);
+                    evictedList.add(evictedFile);
+                }
+            });
+            if (!evictedList.isEmpty())
+                evictedMap.values().removeIf(reference -> null == reference.get());
         }
 
-        // miss
-        if (fileCache.size() == ConfigConstants.FILE_MANAGER_SERVER_CACHE_SIZE) {
-            int random = (int) (Math.random() * fileCache.size());
-            for (Id id : fileCache.keySet()) {
-                if (random == 0) {
-                    fileCache.remove(id);
-                } else {
-                    --random;
+        for (AlphaFile evictedFile : evictedList)
+            flushFile(evictedFile);
+        return file;
+    }
+
+    // evicted file still in use is returned by next get, null if none
+    private AlphaFile getEvictedFile(Id fieldId) {
+        WeakReference<AlphaFile> reference = evictedMap.get(fieldId);
+        return (null == reference) ? null : reference.get();
+    }
+
+    // write buffered writes of file, left buffered if block managers are down and written by its next flush
+    private void flushFile(AlphaFile file) {
+        try {
+            file.flushBuffered();
+        } catch (ErrorCode e) {
+            System.out.println(fileManagerId.getId() + ": flush of " + file.getFileId().getId() + " failed, " + e.getMessage());
+        }
+    }
+
+    private void flushFiles() {
+        for (AlphaFile file : getCachedFiles())
+            flushFile(file);
+    }
+
+    private File warmListFile() {
+        return new File(PathConstants.FILE_MANAGER_PATH, fileManagerId.getId() + PathConstants.WARM_LIST_SUFFIX);
+    }
+
+    // remember field ids of cached files for next start
+    private void writeWarmList() {
+        File file = warmListFile();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (Id fieldId : fileCache.keySet())
+                output.writeUTF(((FieldId) fieldId).getId());
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        }
+    }
+
+    // load files cached before last stop, files removed meanwhile are skipped
+    private void prewarm() {
+        File file = warmListFile();
+        if (!file.exists())
+            return;
+
+        AlphaFileManager fileManager = new AlphaFileManager(fileManagerId);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                FieldId fieldId = new FieldId(input.readUTF());
+                try {
+                    cacheFile(fieldId, fileManager.getFile(fieldId), false);
+                } catch (ErrorCode e) {
+                    // unknown or unreadable file, left to first request
                 }
             }
+        } catch (EOFException e) {
+            // whole list loaded
+        } catch (IOException e) {
+            System.out.println(fileManagerId.getId() + ": prewarm stopped, " + e.getMessage());
         }
-        fileCache.put(fieldId, file);
+    }
+
+    // cached files and evicted ones still in use, their blocks may not be in meta yet
+    Collection<AlphaFile> getCachedFiles() {
+        List<AlphaFile> fileList = new ArrayList<>(fileCache.values());
+        for (WeakReference<AlphaFile> reference : evictedMap.values()) {
+            AlphaFile file = reference.get();
+            if (null != file)
+                fileList.add(file);
+        }
+        return fileList;
     }
 
     // launch file manager RMI service for other clients
@@ -244,19 +387,27 @@ public class AlphaFileManagerServer implements IFileManager {
 
     @Override
     public AlphaFile getFile(Id fieldId) {
-        if (!AlphaFileManagerServer.isServing(fileManagerId))
+        if (!isServing)
             throw new ErrorCode(ErrorCode.FILE_MANAGER_NOT_SERVING, fileManagerId.getId());
 
         // hit
-        if (fileCache.containsKey(fieldId))
-            return fileCache.get(fieldId);
+        AlphaFile cachedFile = fileCache.get(fieldId);
+        if (null != cachedFile) {
+            synchronized (cachePolicy) {
+                cachePolicy.onHit(fieldId);
+            }
+            return cachedFile;
+        }
+
+        // evicted file still in use stays the only file of its field id, it is cached again
+        AlphaFile evictedFile = getEvictedFile(fieldId);
+        if (null != evictedFile)
+            return cacheFile(fieldId, evictedFile, false);
 
-        // miss
+        // miss, concurrent miss of same file gets file cached first
         try {
             AlphaFileManager fileManager = new AlphaFileManager(fileManagerId);
-            AlphaFile file = fileManager.getFile(fieldId);
-            updateCache(fieldId, file);
-            return file;
+            return cacheFile(fieldId, fileManager.getFile(fieldId), false);
         } catch (ErrorCode errorCode) {
             throw errorCode;
         } catch (Exception e) {
@@ -267,12 +418,17 @@ public class AlphaFileManagerServer implements IFileManager {
 
     @Override
     public AlphaFile newFile(Id fieldId) {
-        if (!AlphaFileManagerServer.isServing(fileManagerId))
+        return newFile(fieldId, ConfigConstants.BLOCK_SIZE);
+    }
+
+    @Override
+    public AlphaFile newFile(Id fieldId, int blockSize) {
+        if (!isServing)
             throw new ErrorCode(ErrorCode.FILE_MANAGER_NOT_SERVING, fileManagerId.getId());
 
         try {
             AlphaFileManager fileManager = new AlphaFileManager(fileManagerId);
-            AlphaFile file = fileManager.newFile(fieldId);
+            AlphaFile file = fileManager.newFile(fieldId, blockSize);
             updateCache(fieldId, file);
             return file;
         } catch (ErrorCode errorCode) {
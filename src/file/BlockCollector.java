@@ -0,0 +1,164 @@
+package file;
+
+import block.BlockId;
+import block.BlockManagerId;
+import block.BlockManagerServer;
+import constant.ConfigConstants;
+import util.ErrorCode;
+import util.LongBitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// mark-and-sweep collector of blocks no longer referenced by any file
+public class BlockCollector {
+    private static Thread collectorThread = null;
+    private static final Object lifecycleLock = new Object();
+    private static final Object waitLock = new Object();
+    // stops thread with a wake-up, an interrupt during compaction would close store channels
+    private static volatile boolean isStopped = false;
+
+    // unreferenced blocks found by last cycle, deleted if still unreferenced in next cycle
+    private static Map<BlockManagerId, LongBitmap> candidateMap = new HashMap<>();
+
+    private static long cycleCount = 0;
+    private static long deletedCount = 0;
+
+    public static void start() {
+        synchronized (lifecycleLock) {
+            if (null != collectorThread)
+                return;
+
+            isStopped = false;
+            collectorThread = new Thread(() -> {
+                while (!isStopped) {
+                    try {
+                        pause(ConfigConstants.BLOCK_GC_INTERVAL);
+                        if (!isStopped)
+                            runCycle();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (ErrorCode e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+            }, "block-collector");
+            collectorThread.setDaemon(true);
+            collectorThread.start();
+        }
+    }
+
+    // stop thread and wait for cycle in progress, it returns at next deletion or after compaction
+    public static void stop() {
+        synchronized (lifecycleLock) {
+            if (null == collectorThread)
+                return;
+
+            isStopped = true;
+            synchronized (waitLock) {
+                waitLock.notifyAll();
+            }
+            try {
+                collectorThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            collectorThread = null;
+        }
+    }
+
+    // wait given time, woken at once by stop
+    private static void pause(long millis) throws InterruptedException {
+        synchronized (waitLock) {
+            if (!isStopped)
+                waitLock.wait(millis);
+        }
+    }
+
+    public static void printStats() {
+        System.out.println("Block collector: " + cycleCount + " cycles, " + deletedCount + " blocks deleted");
+    }
+
+    public static synchronized void runCycle() throws InterruptedException {
+        // blocks shared by dedup before mark may not be in file meta yet
+        Map<BlockManagerId, LongBitmap> pinnedMap = drainPinned();
+
+        // nothing is swept if marking fails, an incomplete mark would delete live blocks
+        Map<BlockManagerId, LongBitmap> markMap = mark();
+        Map<BlockManagerId, LongBitmap> newCandidateMap = new HashMap<>();
+
+        for (BlockManagerId blockManagerId : BlockManagerServer.getManagerIds()) {
+            if (!BlockManagerServer.isServing(blockManagerId))
+                continue;
+
+            BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
+            LongBitmap markedSet = markMap.getOrDefault(blockManagerId, new LongBitmap());
+            LongBitmap pinnedSet = pinnedMap.getOrDefault(blockManagerId, new LongBitmap());
+            LongBitmap lastCandidateSet = candidateMap.getOrDefault(blockManagerId, new LongBitmap());
+            LongBitmap candidateSet = new LongBitmap();
+            List<Long> garbageList = new ArrayList<>();
+
+            blockManagerServer.getOwnershipIndex().forEach(blockId -> {
+                if (markedSet.contains(blockId) || pinnedSet.contains(blockId))
+                    return;
+                if (lastCandidateSet.contains(blockId))
+                    garbageList.add(blockId);
+                else
+                    candidateSet.add(blockId);
+            });
+            newCandidateMap.put(blockManagerId, candidateSet);
+
+            // throttle deletion to limit I/O, blocks shared by dedup since pins were drained are kept
+            for (long blockId : garbageList) {
+                if (isStopped)
+                    return;
+                if (blockManagerServer.deleteBlock(new BlockId(blockId)))
+                    ++deletedCount;
+                pause(1000L / ConfigConstants.BLOCK_GC_DELETE_RATE);
+            }
+
+            // reclaim space of at most one segment per cycle
+            blockManagerServer.compactStore();
+        }
+
+        candidateMap = newCandidateMap;
+        ++cycleCount;
+    }
+
+    private static Map<BlockManagerId, LongBitmap> drainPinned() {
+        Map<BlockManagerId, LongBitmap> pinnedMap = new HashMap<>();
+
+        for (BlockManagerId blockManagerId : BlockManagerServer.getManagerIds()) {
+            BlockManagerServer blockManagerServer = BlockManagerServer.getServer(blockManagerId);
+            if (null != blockManagerServer && null != blockManagerServer.getDedupIndex())
+                pinnedMap.put(blockManagerId, blockManagerServer.getDedupIndex().drainPinned());
+        }
+
+        return pinnedMap;
+    }
+
+    // collect blocks referenced by file metas of all file managers
+    private static Map<BlockManagerId, LongBitmap> mark() {
+        Map<BlockManagerId, LongBitmap> markMap = new HashMap<>();
+
+        for (AlphaFileManagerId fileManagerId : AlphaFileManagerServer.getManagerIds()) {
+            AlphaFileManager fileManager = new AlphaFileManager(fileManagerId);
+            Map<FieldId, AlphaFileId> fileMap = fileManager.getFileMap();
+            for (FieldId fieldId : fileMap.keySet()) {
+                AlphaFile file = new AlphaFile(fileManagerId, fileMap.get(fieldId), fieldId);
+                file.markBlocks(markMap);
+            }
+
+            // cached files may hold block lists not written into meta yet
+            AlphaFileManagerServer fileManagerServer = AlphaFileManagerServer.getServer(fileManagerId);
+            if (null != fileManagerServer) {
+                for (AlphaFile file : fileManagerServer.getCachedFiles())
+                    file.markBlocks(markMap);
+            }
+        }
+
+        return markMap;
+    }
+}
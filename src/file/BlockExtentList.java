@@ -0,0 +1,232 @@
+package file;
+
+import block.BlockId;
+import block.BlockManagerId;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+// logic blocks of a file, runs of blocks with consecutive ids on same managers kept as one extent,
+// extent without managers is a run of unallocated blocks reading as zeros
+public class BlockExtentList implements Serializable {
+    private static final long serialVersionUID = 3361843620125846117L;
+
+    // logic blocks [start, start + length), replica k of block start + i is startIds[k] + i on managers[k]
+    private static class Extent implements Serializable {
+        private static final long serialVersionUID = -2457436617906187513L;
+
+        private final int start;
+        private int length;
+        private final BlockManagerId[] managers;
+        private final long[] startIds;
+
+        Extent(int start, int length, BlockManagerId[] managers, long[] startIds) {
+            this.start = start;
+            this.length = length;
+            this.managers = managers;
+            this.startIds = startIds;
+        }
+
+        Extent(int start, Map<BlockManagerId, BlockId> replicaMap) {
+            this.start = start;
+            this.length = 1;
+            this.managers = new BlockManagerId[replicaMap.size()];
+            this.startIds = new long[replicaMap.size()];
+
+            int k = 0;
+            for (BlockManagerId blockManagerId : replicaMap.keySet()) {
+                managers[k] = blockManagerId;
+                startIds[k] = replicaMap.get(blockManagerId).getId();
+                ++k;
+            }
+        }
+
+        int end() {
+            return start + length;
+        }
+
+        Map<BlockManagerId, BlockId> get(int index) {
+            Map<BlockManagerId, BlockId> replicaMap = new LinkedHashMap<>();
+            for (int k = 0; k < managers.length; ++k)
+                replicaMap.put(managers[k], new BlockId(startIds[k] + index - start));
+            return replicaMap;
+        }
+
+        // sub extent of logic blocks [from, to)
+        Extent slice(int from, int to) {
+            long[] sliceIds = new long[startIds.length];
+            for (int k = 0; k < startIds.length; ++k)
+                sliceIds[k] = startIds[k] + from - start;
+            return new Extent(from, to - from, managers, sliceIds);
+        }
+
+        // whether given replicas continue this extent as its next block
+        boolean isFollowedBy(Map<BlockManagerId, BlockId> replicaMap) {
+            if (replicaMap.size() != managers.length)
+                return false;
+            for (int k = 0; k < managers.length; ++k) {
+                BlockId blockId = replicaMap.get(managers[k]);
+                if (null == blockId || blockId.getId() != startIds[k] + length)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private final ArrayList<Extent> extentList;
+    private int blockNum;
+
+    public BlockExtentList() {
+        this.extentList = new ArrayList<>();
+        this.blockNum = 0;
+    }
+
+    // convert legacy per-block replica maps
+    static BlockExtentList fromLogicBlockList(List<HashMap<BlockManagerId, BlockId>> logicBlockList) {
+        BlockExtentList blockExtentList = new BlockExtentList();
+        for (HashMap<BlockManagerId, BlockId> logicBlockMap : logicBlockList)
+            blockExtentList.add(logicBlockMap);
+        return blockExtentList;
+    }
+
+    public int blockNum() {
+        return blockNum;
+    }
+
+    public int extentNum() {
+        return extentList.size();
+    }
+
+    // find extent containing given logic block by binary search
+    private int find(int index) {
+        int low = 0, high = extentList.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Extent extent = extentList.get(mid);
+            if (index < extent.start)
+                high = mid - 1;
+            else if (index >= extent.end())
+                low = mid + 1;
+            else
+                return mid;
+        }
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+
+    // get replicas of given logic block, manager to block id, empty for unallocated block
+    public Map<BlockManagerId, BlockId> get(int index) {
+        return extentList.get(find(index)).get(index);
+    }
+
+    public boolean isHole(int index) {
+        return extentList.get(find(index)).managers.length == 0;
+    }
+
+    // append unallocated logic blocks
+    public void addHoles(int num) {
+        if (num <= 0)
+            return;
+
+        int last = extentList.size() - 1;
+        if (last >= 0 && extentList.get(last).managers.length == 0)
+            extentList.get(last).length += num;
+        else
+            extentList.add(new Extent(blockNum, num, new BlockManagerId[0], new long[0]));
+        blockNum += num;
+    }
+
+    // append logic block
+    public void add(Map<BlockManagerId, BlockId> replicaMap) {
+        int last = extentList.size() - 1;
+        if (last >= 0 && extentList.get(last).isFollowedBy(replicaMap))
+            ++extentList.get(last).length;
+        else
+            extentList.add(new Extent(blockNum, replicaMap));
+        ++blockNum;
+    }
+
+    // replace replicas of given logic block, splitting its extent
+    public void set(int index, Map<BlockManagerId, BlockId> replicaMap) {
+        if (index == blockNum) {
+            add(replicaMap);
+            return;
+        }
+
+        int pos = find(index);
+        Extent extent = extentList.get(pos);
+
+        List<Extent> replaceList = new ArrayList<>(3);
+        if (index > extent.start)
+            replaceList.add(extent.slice(extent.start, index));
+        replaceList.add(new Extent(index, replicaMap));
+        if (index + 1 < extent.end())
+            replaceList.add(extent.slice(index + 1, extent.end()));
+
+        extentList.remove(pos);
+        extentList.addAll(pos, replaceList);
+
+        // merge new block into previous extent when ids continue
+        int newPos = (index > extent.start) ? pos + 1 : pos;
+        if (newPos > 0 && extentList.get(newPos - 1).isFollowedBy(replicaMap)) {
+            ++extentList.get(newPos - 1).length;
+            extentList.remove(newPos);
+        }
+    }
+
+    // keep first given number of logic blocks
+    public void truncate(int newBlockNum) {
+        if (newBlockNum >= blockNum)
+            return;
+
+        if (newBlockNum == 0) {
+            extentList.clear();
+        } else {
+            int pos = find(newBlockNum - 1);
+            Extent extent = extentList.get(pos);
+            extent.length = newBlockNum - extent.start;
+            extentList.subList(pos + 1, extentList.size()).clear();
+        }
+        blockNum = newBlockNum;
+    }
+
+    // logic block holding given block id on given manager, -1 if none
+    public int indexOf(BlockManagerId blockManagerId, long blockId) {
+        for (Extent extent : extentList) {
+            for (int k = 0; k < extent.managers.length; ++k) {
+                if (extent.managers[k].equals(blockManagerId) && blockId >= extent.startIds[k]
+                        && blockId < extent.startIds[k] + extent.length)
+                    return extent.start + (int) (blockId - extent.startIds[k]);
+            }
+        }
+        return -1;
+    }
+
+    // visit every replica block id
+    public void forEach(ObjLongConsumer<BlockManagerId> consumer) {
+        for (Extent extent : extentList) {
+            for (int k = 0; k < extent.managers.length; ++k) {
+                for (int i = 0; i < extent.length; ++i)
+                    consumer.accept(extent.managers[k], extent.startIds[k] + i);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder strBuilder = new StringBuilder();
+        for (Extent extent : extentList) {
+            strBuilder.append(extent.start + "-" + (extent.end() - 1) + ":");
+            if (extent.managers.length == 0)
+                strBuilder.append(" hole");
+            for (int k = 0; k < extent.managers.length; ++k)
+                strBuilder.append(" [\"" + extent.managers[k].getId() + "\"," + extent.startIds[k] + "]");
+            strBuilder.append("\n");
+        }
+        return strBuilder.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package file;
+
+import constant.ConfigConstants;
+import util.ErrorCode;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+// fetches logic blocks of a read in parallel for local and remote files alike, fetches in flight are bounded
+// across all files so a large read cannot queue unbounded requests on managers
+class BlockFetcher {
+    private static final Semaphore inFlightPermits = new Semaphore(ConfigConstants.READ_MAX_IN_FLIGHT);
+    private static final ExecutorService fetchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "block-fetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // start fetch, waits while too many fetches are in flight
+    static Future<?> submit(Runnable fetch) {
+        inFlightPermits.acquireUninterruptibly();
+        try {
+            return fetchExecutor.submit(() -> {
+                try {
+                    fetch.run();
+                } finally {
+                    inFlightPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightPermits.release();
+            throw e;
+        }
+    }
+
+    // start background fetch if a fetch is free, null otherwise so prefetching never holds up reads
+    static <T> Future<T> trySubmit(Callable<T> fetch) {
+        if (!inFlightPermits.tryAcquire())
+            return null;
+        try {
+            return fetchExecutor.submit(() -> {
+                try {
+                    return fetch.call();
+                } finally {
+                    inFlightPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightPermits.release();
+            throw e;
+        }
+    }
+
+    // wait for all fetches, first failure is thrown once none is running any more
+    static void awaitAll(List<Future<?>> fetchList) {
+        RuntimeException error = null;
+        for (Future<?> future : fetchList) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (null == error)
+                    error = (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause()
+                            : new ErrorCode(ErrorCode.UNAVAILABLE_LOGIC_BLOCK);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (null == error)
+                    error = new ErrorCode(ErrorCode.UNAVAILABLE_LOGIC_BLOCK);
+            }
+        }
+        if (null != error)
+            throw error;
+    }
+}
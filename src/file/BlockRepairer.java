@@ -0,0 +1,57 @@
+package file;
+
+import block.BlockManagerId;
+import block.IBlockRepairer;
+import util.ErrorCode;
+import util.LongBitmap;
+
+import java.util.Map;
+import java.util.Set;
+
+// repairs corrupt blocks found by block scrubbers through files referencing them,
+// a block shared by several files is rewritten once since its content is the same for all of them
+public class BlockRepairer implements IBlockRepairer {
+    @Override
+    public void repair(BlockManagerId blockManagerId, LongBitmap corruptSet) {
+        for (AlphaFileManagerId fileManagerId : AlphaFileManagerServer.getManagerIds()) {
+            // cached files may hold block lists not written into meta yet
+            AlphaFileManagerServer fileManagerServer = AlphaFileManagerServer.getServer(fileManagerId);
+            if (null != fileManagerServer) {
+                for (AlphaFile file : fileManagerServer.getCachedFiles()) {
+                    if (corruptSet.size() == 0)
+                        return;
+                    file.repairBlocks(blockManagerId, corruptSet);
+                }
+            }
+
+            AlphaFileManager fileManager = new AlphaFileManager(fileManagerId);
+            Map<FieldId, AlphaFileId> fileMap = fileManager.getFileMap();
+            for (FieldId fieldId : fileMap.keySet()) {
+                if (corruptSet.size() == 0)
+                    return;
+                AlphaFile file = new AlphaFile(fileManagerId, fileMap.get(fieldId), fieldId);
+                file.repairBlocks(blockManagerId, corruptSet);
+            }
+        }
+    }
+
+    // files recorded by replica writer are repaired through their cached handle, so their meta is written once;
+    // files still short of replicas are kept for next pass
+    @Override
+    public void repairUnderReplicated() {
+        Map<AlphaFileManagerId, Set<FieldId>> underReplicatedMap = ReplicaWriter.drainUnderReplicated();
+        for (AlphaFileManagerId fileManagerId : underReplicatedMap.keySet()) {
+            for (FieldId fieldId : underReplicatedMap.get(fileManagerId)) {
+                try {
+                    AlphaFile file = AlphaFileManagerServer.getServer(fileManagerId).getFile(fieldId);
+                    if (!file.reReplicate())
+                        ReplicaWriter.recordUnderReplicated(fileManagerId, fieldId);
+                } catch (ErrorCode e) {
+                    // unknown file is dropped, others wait for their file manager
+                    if (e.getErrorCode() != ErrorCode.UNKNOWN_FIELD_ID)
+                        ReplicaWriter.recordUnderReplicated(fileManagerId, fieldId);
+                }
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import id.Id;
 public interface IFileManager {
     IFile getFile(Id fileId);
     IFile newFile(Id fileId);
+    IFile newFile(Id fileId, int blockSize);
     String getPath();
     Id getManagerId();
 }
@@ -5,8 +5,9 @@ import java.rmi.RemoteException;
 
 public interface IFileManagerRMI extends Remote {
     IFile getFileRMI(FieldId fieldId) throws RemoteException;
-    IFile newFileRMI(FieldId fieldId) throws RemoteException;
+    IFile newFileRMI(FieldId fieldId, int blockSize) throws RemoteException;
     String getPathRMI() throws RemoteException;
     IFile setSizeRMI(FieldId fieldId, long newSize) throws RemoteException;
+    IFile allocateRMI(FieldId fieldId, int blockStartNum, byte[][] blocks) throws RemoteException;
     void writeMetaRMI(FieldId fieldId, IFile file) throws RemoteException;
 }
@@ -0,0 +1,141 @@
+package file;
+
+import block.BlockId;
+import block.BlockManagerId;
+import constant.ConfigConstants;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// readahead window of one file handle, reads starting where the previous one ended grow the window of logic
+// blocks fetched ahead in background, any other read drops it together with blocks fetched for it
+public class Readahead {
+    private static final AtomicLong prefetchCount = new AtomicLong();
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong wastedBytes = new AtomicLong();
+
+    private static class Prefetch {
+        private final Map<BlockManagerId, BlockId> logicBlockMap;     // replicas fetched, stale once block is rewritten
+        private final Future<byte[]> future;
+        private boolean isTaken = false;    // read at least once, kept until reader moves past block
+
+        Prefetch(Map<BlockManagerId, BlockId> logicBlockMap, Future<byte[]> future) {
+            this.logicBlockMap = logicBlockMap;
+            this.future = future;
+        }
+    }
+
+    private final int blockSize;
+    private final int maxWindow;
+    private final TreeMap<Integer, Prefetch> prefetchMap = new TreeMap<>();
+    private long expectedPos = -1;      // end of previous read
+    private int window = 0;             // blocks fetched ahead, 0 while access is not sequential
+
+    Readahead(int blockSize) {
+        this.blockSize = blockSize;
+        this.maxWindow = Math.max(1, Math.min(ConfigConstants.READAHEAD_MAX_BLOCKS,
+                (int) (ConfigConstants.READAHEAD_MAX_BYTES / blockSize)));
+    }
+
+    // note read of given range before it is served, adjusts window
+    synchronized void onRead(long pos, int length) {
+        if (pos == expectedPos) {
+            window = (window == 0) ? Math.min(ConfigConstants.READAHEAD_MIN_BLOCKS, maxWindow) : Math.min(window * 2, maxWindow);
+        } else {
+            window = 0;
+            dropAll();
+        }
+        expectedPos = pos + length;
+
+        // blocks before read are not read again by a sequential reader
+        dropBefore((int) (pos / blockSize));
+    }
+
+    // prefetched data of logic block if it still holds given replicas, null otherwise, block stays in window
+    // since small sequential reads take it several times
+    byte[] take(int index, Map<BlockManagerId, BlockId> logicBlockMap) {
+        Prefetch prefetch;
+        boolean isFirstTake;
+        synchronized (this) {
+            prefetch = prefetchMap.get(index);
+            if (null == prefetch)
+                return null;
+            if (!prefetch.logicBlockMap.equals(logicBlockMap)) {
+                prefetchMap.remove(index);
+                drop(prefetch);
+                return null;
+            }
+            isFirstTake = !prefetch.isTaken;
+            prefetch.isTaken = true;
+        }
+
+        try {
+            byte[] data = prefetch.future.get();
+            if (null != data && isFirstTake)
+                hitCount.incrementAndGet();
+            return data;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // fetch allocated blocks of window after given block in background, fetcher gives null when fetches are
+    // saturated, then the rest of the window is left to later reads
+    synchronized void prefetchAfter(int lastIndex, BlockExtentList extentList,
+                                    Function<Map<BlockManagerId, BlockId>, Future<byte[]>> fetcher) {
+        for (int index = lastIndex + 1; index <= lastIndex + window && index < extentList.blockNum(); ++index) {
+            if (prefetchMap.containsKey(index) || extentList.isHole(index))
+                continue;
+            Map<BlockManagerId, BlockId> logicBlockMap = extentList.get(index);
+            Future<byte[]> future = fetcher.apply(logicBlockMap);
+            if (null == future)
+                return;
+            prefetchMap.put(index, new Prefetch(logicBlockMap, future));
+            prefetchCount.incrementAndGet();
+        }
+    }
+
+    // drop all prefetched blocks, e.g. after data is written
+    synchronized void clear() {
+        dropAll();
+    }
+
+    private void dropBefore(int index) {
+        Iterator<Prefetch> iterator = prefetchMap.headMap(index).values().iterator();
+        while (iterator.hasNext()) {
+            drop(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void dropAll() {
+        for (Prefetch prefetch : prefetchMap.values())
+            drop(prefetch);
+        prefetchMap.clear();
+    }
+
+    // running fetch is left to finish since interrupting it would close store channels
+    private void drop(Prefetch prefetch) {
+        prefetch.future.cancel(false);
+        if (!prefetch.isTaken)
+            wastedBytes.addAndGet(blockSize);
+    }
+
+    static double getHitRate() {
+        long prefetches = prefetchCount.get();
+        return (prefetches == 0) ? 0 : (double) hitCount.get() / prefetches;
+    }
+
+    public static void printStats() {
+        System.out.println(String.format("Readahead stats: %d blocks prefetched, %d hits, hit rate %.2f, %d bytes wasted",
+                prefetchCount.get(), hitCount.get(), getHitRate(), wastedBytes.get()));
+    }
+}
@@ -0,0 +1,65 @@
+package file;
+
+import constant.ConfigConstants;
+import util.ErrorCode;
+
+import java.io.Serializable;
+
+// how logic blocks of a file survive block manager failures:
+// full replicas on different managers, or stripes of data blocks with Reed-Solomon parity blocks
+public class RedundancyPolicy implements Serializable {
+    private static final long serialVersionUID = -3108405930260958624L;
+
+    private final int replicaNum;   // 1 for erasure coding
+    private final int dataNum;      // 0 for replication
+    private final int parityNum;
+
+    private RedundancyPolicy(int replicaNum, int dataNum, int parityNum) {
+        this.replicaNum = replicaNum;
+        this.dataNum = dataNum;
+        this.parityNum = parityNum;
+    }
+
+    public static RedundancyPolicy replication(int replicaNum) {
+        if (replicaNum <= 0)
+            throw new ErrorCode(ErrorCode.INVALID_REDUNDANCY_POLICY, "replication " + replicaNum);
+        return new RedundancyPolicy(replicaNum, 0, 0);
+    }
+
+    // every stripe of dataNum logic blocks gets parityNum parity blocks, all on different managers
+    public static RedundancyPolicy erasureCoding(int dataNum, int parityNum) {
+        if (dataNum <= 0 || parityNum <= 0 || dataNum + parityNum > ConfigConstants.BLOCK_MANAGER_NUM)
+            throw new ErrorCode(ErrorCode.INVALID_REDUNDANCY_POLICY, "erasure coding " + dataNum + "+" + parityNum);
+        return new RedundancyPolicy(1, dataNum, parityNum);
+    }
+
+    public static RedundancyPolicy getDefault() {
+        return replication(ConfigConstants.DUPLICATION_NUM);
+    }
+
+    public boolean isErasureCoded() {
+        return dataNum > 0;
+    }
+
+    public int getReplicaNum() {
+        return replicaNum;
+    }
+
+    public int getDataNum() {
+        return dataNum;
+    }
+
+    public int getParityNum() {
+        return parityNum;
+    }
+
+    // serving block managers needed to place one stripe or one set of replicas
+    public int getManagerNum() {
+        return isErasureCoded() ? dataNum + parityNum : replicaNum;
+    }
+
+    @Override
+    public String toString() {
+        return isErasureCoded() ? "erasure coding " + dataNum + "+" + parityNum : "replication " + replicaNum;
+    }
+}
@@ -0,0 +1,130 @@
+package file;
+
+import block.BlockManagerId;
+import constant.ConfigConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// read latency and error rate of every block manager shared by all files, orders replicas by expected cost
+// and times hedged reads from recent latencies
+public class ReplicaSelector {
+    // recent reads the hedge delay percentile is taken from, recomputed every update interval samples
+    private final static int SAMPLE_WINDOW = 1024;
+    private final static int DELAY_UPDATE_INTERVAL = 64;
+
+    private static class Stats {
+        private double latencyMicros = 0;   // moving average, 0 until first read so new managers are tried
+        private double errorRate = 0;       // moving average of failed reads
+        private long readCount = 0;
+        private long errorCount = 0;
+
+        // a failed read costs a client timeout on average
+        private synchronized double expectedMicros() {
+            return (1 - errorRate) * latencyMicros + errorRate * ConfigConstants.MANAGER_CLIENT_SOCKET_TIMEOUT * 1000.0;
+        }
+
+        private synchronized void record(double micros, boolean isError) {
+            double weight = ConfigConstants.READ_LATENCY_EWMA_WEIGHT;
+            if (!isError)
+                latencyMicros = (latencyMicros == 0) ? micros : latencyMicros + weight * (micros - latencyMicros);
+            errorRate += weight * ((isError ? 1 : 0) - errorRate);
+            ++readCount;
+            if (isError)
+                ++errorCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d reads, %d errors, latency %.1f us, error rate %.3f",
+                    readCount, errorCount, latencyMicros, errorRate);
+        }
+    }
+
+    private static final ConcurrentHashMap<BlockManagerId, Stats> statsMap = new ConcurrentHashMap<>();
+    private static final long[] recentMicros = new long[SAMPLE_WINDOW];
+    private static int recentNum = 0;
+    private static int recentPos = 0;
+    private static volatile long hedgeDelayMicros = ConfigConstants.READ_HEDGE_MIN_DELAY;
+    private static final AtomicLong hedgeCount = new AtomicLong();
+    private static final AtomicLong hedgeWinCount = new AtomicLong();
+
+    // replica reads of hedged requests, daemon threads so losing reads never hold up exit
+    private static final ExecutorService readExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "replica-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static ExecutorService getExecutor() {
+        return readExecutor;
+    }
+
+    private static Stats getStats(BlockManagerId blockManagerId) {
+        return statsMap.computeIfAbsent(blockManagerId, id -> new Stats());
+    }
+
+    // replicas on given managers, cheapest expected read first
+    static List<BlockManagerId> order(Collection<BlockManagerId> blockManagerIds) {
+        List<BlockManagerId> orderList = new ArrayList<>(blockManagerIds);
+        if (orderList.size() > 1) {
+            // costs taken once, averages move under concurrent reads while sorting
+            Map<BlockManagerId, Double> costMap = new HashMap<>();
+            for (BlockManagerId blockManagerId : orderList)
+                costMap.put(blockManagerId, getStats(blockManagerId).expectedMicros());
+            orderList.sort(Comparator.comparingDouble(costMap::get));
+        }
+        return orderList;
+    }
+
+    static void recordSuccess(BlockManagerId blockManagerId, long micros) {
+        getStats(blockManagerId).record(micros, false);
+
+        synchronized (recentMicros) {
+            recentMicros[recentPos] = micros;
+            recentPos = (recentPos + 1) % SAMPLE_WINDOW;
+            recentNum = Math.min(recentNum + 1, SAMPLE_WINDOW);
+            if (recentPos % DELAY_UPDATE_INTERVAL == 0)
+                updateHedgeDelay();
+        }
+    }
+
+    static void recordFailure(BlockManagerId blockManagerId, long micros) {
+        getStats(blockManagerId).record(micros, true);
+    }
+
+    // caller holds lock of recent latencies
+    private static void updateHedgeDelay() {
+        long[] sorted = Arrays.copyOf(recentMicros, recentNum);
+        Arrays.sort(sorted);
+        long percentile = sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * ConfigConstants.READ_HEDGE_PERCENTILE))];
+        hedgeDelayMicros = Math.max(ConfigConstants.READ_HEDGE_MIN_DELAY, percentile);
+    }
+
+    // wait before a second replica is asked, reads slower than most recent ones are hedged
+    static long getHedgeDelayMicros() {
+        return hedgeDelayMicros;
+    }
+
+    static void recordHedge(boolean isWon) {
+        hedgeCount.incrementAndGet();
+        if (isWon)
+            hedgeWinCount.incrementAndGet();
+    }
+
+    public static void printStats() {
+        System.out.println("Replica read stats: hedge delay " + hedgeDelayMicros + " us, "
+                + hedgeCount.get() + " hedged reads, " + hedgeWinCount.get() + " won by hedge");
+        for (BlockManagerId id : statsMap.keySet())
+            System.out.println(id.getId() + " : " + statsMap.get(id));
+    }
+}
@@ -0,0 +1,176 @@
+package file;
+
+import block.BlockId;
+import block.BlockManagerId;
+import constant.ConfigConstants;
+import util.ErrorCode;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// fans replica writes of logic blocks out to block managers in parallel, writes in flight are bounded across
+// all files so a large write cannot queue unbounded requests on managers
+public class ReplicaWriter {
+    public final static String ACK_ALL = "ALL";
+    public final static String ACK_QUORUM = "QUORUM";
+    public final static String ACK_ONE = "ONE";
+
+    private static final Semaphore inFlightPermits = new Semaphore(ConfigConstants.WRITE_MAX_IN_FLIGHT);
+    private static final ExecutorService writeExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "replica-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicLong writeCount = new AtomicLong();
+    private static final AtomicLong failureCount = new AtomicLong();
+    private static final ConcurrentHashMap<AlphaFileManagerId, Set<FieldId>> underReplicatedMap = new ConcurrentHashMap<>();
+
+    // replica writes of one logic block, issued together and collected once all blocks of a write are issued;
+    // collecting returns as soon as ack mode is met, rest of replicas are settled later
+    static class BlockWrite {
+        private final int index;
+        private final Map<BlockManagerId, BlockId> writtenMap = new LinkedHashMap<>();
+        private int submittedNum = 0;
+        private int doneNum = 0;
+        private ErrorCode error = null;
+        private Map<BlockManagerId, BlockId> ackedMap = null;   // replicas returned by collect
+
+        BlockWrite(int index) {
+            this.index = index;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        // start write of one replica, waits while too many writes are in flight
+        void submit(BlockManagerId blockManagerId, Callable<BlockId> write) {
+            inFlightPermits.acquireUninterruptibly();
+            synchronized (this) {
+                ++submittedNum;
+            }
+            try {
+                writeExecutor.submit(() -> {
+                    try {
+                        onDone(blockManagerId, write.call(), null);
+                    } catch (Exception e) {
+                        onDone(blockManagerId, null, (e instanceof ErrorCode) ? (ErrorCode) e
+                                : new ErrorCode(ErrorCode.REPLICA_WRITE_FAILED, blockManagerId.getId()));
+                    } finally {
+                        inFlightPermits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlightPermits.release();
+                synchronized (this) {
+                    --submittedNum;
+                }
+                throw e;
+            }
+        }
+
+        private synchronized void onDone(BlockManagerId blockManagerId, BlockId blockId, ErrorCode writeError) {
+            writeCount.incrementAndGet();
+            if (null != blockId) {
+                writtenMap.put(blockManagerId, blockId);
+            } else {
+                failureCount.incrementAndGet();
+                if (null == error)
+                    error = writeError;
+            }
+            ++doneNum;
+            notifyAll();
+        }
+
+        // wait until replicas written meet ack mode and keep them, fail once they no longer can
+        synchronized Map<BlockManagerId, BlockId> collect() {
+            int requiredAcks = getRequiredAcks(submittedNum);
+            try {
+                while (writtenMap.size() < requiredAcks && submittedNum - (doneNum - writtenMap.size()) >= requiredAcks)
+                    wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ErrorCode(ErrorCode.REPLICA_WRITE_FAILED, String.valueOf(index));
+            }
+
+            if (writtenMap.size() < requiredAcks)
+                throw (null != error) ? error : new ErrorCode(ErrorCode.REPLICA_WRITE_FAILED, String.valueOf(index));
+            ackedMap = new LinkedHashMap<>(writtenMap);
+            return new LinkedHashMap<>(ackedMap);
+        }
+
+        synchronized boolean isSettled() {
+            return doneNum == submittedNum;
+        }
+
+        // wait for every replica, written ones are returned
+        synchronized Map<BlockManagerId, BlockId> settle() {
+            try {
+                while (doneNum < submittedNum)
+                    wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new LinkedHashMap<>(writtenMap);
+        }
+
+        synchronized Map<BlockManagerId, BlockId> getAckedMap() {
+            return ackedMap;
+        }
+
+        // replicas written so far, referenced by file before they are settled
+        synchronized Map<BlockManagerId, BlockId> getWrittenMap() {
+            return new LinkedHashMap<>(writtenMap);
+        }
+
+        synchronized boolean isFullyWritten() {
+            return writtenMap.size() == submittedNum;
+        }
+    }
+
+    // written replicas a block write needs out of given replicas
+    static int getRequiredAcks(int replicaNum) {
+        switch (ConfigConstants.WRITE_ACK_MODE) {
+            case ACK_ALL:
+                return replicaNum;
+            case ACK_QUORUM:
+                return replicaNum / 2 + 1;
+            case ACK_ONE:
+                return Math.min(1, replicaNum);
+            default:
+                throw new ErrorCode(ErrorCode.UNKNOWN_WRITE_ACK_MODE, ConfigConstants.WRITE_ACK_MODE);
+        }
+    }
+
+    // files with logic blocks left short of replicas by failed writes, re-replicated by block repairer
+    static void recordUnderReplicated(AlphaFileManagerId fileManagerId, FieldId fieldId) {
+        underReplicatedMap.computeIfAbsent(fileManagerId, id -> ConcurrentHashMap.newKeySet()).add(fieldId);
+    }
+
+    static Map<AlphaFileManagerId, Set<FieldId>> drainUnderReplicated() {
+        Map<AlphaFileManagerId, Set<FieldId>> drainedMap = new HashMap<>();
+        for (AlphaFileManagerId fileManagerId : underReplicatedMap.keySet()) {
+            Set<FieldId> fieldSet = underReplicatedMap.remove(fileManagerId);
+            if (null != fieldSet)
+                drainedMap.put(fileManagerId, fieldSet);
+        }
+        return drainedMap;
+    }
+
+    public static void printStats() {
+        System.out.println("Replica write stats: ack " + ConfigConstants.WRITE_ACK_MODE + ", "
+                + writeCount.get() + " replica writes, " + failureCount.get() + " failed, "
+                + underReplicatedMap.values().stream().mapToInt(Set::size).sum() + " files to re-replicate, "
+                + (ConfigConstants.WRITE_MAX_IN_FLIGHT - inFlightPermits.availablePermits()) + " in flight");
+    }
+}
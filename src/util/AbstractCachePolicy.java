@@ -0,0 +1,70 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// hit, miss, eviction and rejection counters shared by cache policies
+public abstract class AbstractCachePolicy<K> implements ICachePolicy<K> {
+    protected long capacity;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong rejectionCount = new AtomicLong();
+
+    protected AbstractCachePolicy(long capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void onHit(K key) {
+        hitCount.incrementAndGet();
+    }
+
+    @Override
+    public void onMiss(K key) {
+        missCount.incrementAndGet();
+    }
+
+    // pass dropped key to evictor, counted as rejection when it is the key waiting for admission
+    protected void evict(K key, K admittedKey, Consumer<K> evictor) {
+        if (key.equals(admittedKey))
+            rejectionCount.incrementAndGet();
+        else
+            evictionCount.incrementAndGet();
+        evictor.accept(key);
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    public abstract String getName();
+
+    @Override
+    public String toString() {
+        return String.format("%s %d/%d, %d hits, %d misses, %d evictions, %d rejections, hit rate %.2f",
+                getName(), size(), capacity, hitCount.get(), missCount.get(), evictionCount.get(),
+                rejectionCount.get(), getHitRate());
+    }
+}
@@ -0,0 +1,59 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+// replay recorded block access trace against cache policies to compare hit rates offline
+public class CacheSimulator {
+    public final static String[] POLICY_NAMES = {LruPolicy.NAME, SlruPolicy.NAME, TinyLfuPolicy.NAME};
+
+    // trace holds one accessed block id per line
+    public static long[] readTrace(File file) {
+        long[] trace = new long[1024];
+        int length = 0;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+                if (length == trace.length)
+                    trace = Arrays.copyOf(trace, length * 2);
+                trace[length++] = Long.parseLong(line);
+            }
+        } catch (IOException e) {
+            throw new ErrorCode(ErrorCode.IO_EXCEPTION, file.getPath());
+        } catch (NumberFormatException e) {
+            throw new ErrorCode(ErrorCode.CACHE_TRACE_INVALID, file.getPath() + " line " + (length + 1));
+        }
+
+        return Arrays.copyOf(trace, length);
+    }
+
+    // cache of given entries under given policy, every miss is offered to policy like a server cache does
+    public static AbstractCachePolicy<Long> simulate(long[] trace, String policyName, long capacity) {
+        AbstractCachePolicy<Long> policy = (AbstractCachePolicy<Long>) ICachePolicy.<Long>getPolicy(policyName, capacity);
+        for (long blockId : trace) {
+            if (policy.contains(blockId)) {
+                policy.onHit(blockId);
+            } else {
+                policy.onMiss(blockId);
+                policy.onInsert(blockId, key -> {});
+            }
+        }
+        return policy;
+    }
+
+    public static void printSimulation(File file, long[] capacities) {
+        long[] trace = readTrace(file);
+        System.out.println("Cache simulation of " + trace.length + " accesses in " + file.getPath() + ":");
+        for (long capacity : capacities) {
+            for (String policyName : POLICY_NAMES)
+                System.out.println(simulate(trace, policyName, capacity));
+        }
+    }
+}
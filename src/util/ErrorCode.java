@@ -126,6 +126,43 @@ public class ErrorCode extends RuntimeException {
     public static final int UNKNOWN_FILE_MANAGER_CLIENT_ID = 82;
     public static final int FILE_CLIENT_INVALID_FIELD_TYPE = 83;
 
+    // Block Checksum
+    public static final int UNKNOWN_CHECKSUM_TYPE = 84;
+
+    // Block Dedup
+    public static final int FINGERPRINT_INVALID = 85;
+
+    // File Block Size
+    public static final int INVALID_FILE_BLOCK_SIZE = 86;
+
+    // Block Codec
+    public static final int UNKNOWN_BLOCK_CODEC = 87;
+
+    // File Redundancy Policy
+    public static final int INVALID_REDUNDANCY_POLICY = 88;
+    public static final int NON_EMPTY_FILE_POLICY = 89;
+
+    // Block Write-Ahead Log
+    public static final int INVALID_DURABILITY = 90;
+    public static final int WAL_RECORD_INVALID = 91;
+
+    // Cache Policy
+    public static final int UNKNOWN_CACHE_POLICY = 92;
+    public static final int CACHE_TRACE_INVALID = 93;
+
+    // Block Verification
+    public static final int UNKNOWN_VERIFY_MODE = 94;
+
+    // Index Checkpoint
+    public static final int INDEX_CHECKPOINT_INVALID = 95;
+
+    // Replica Write
+    public static final int REPLICA_WRITE_FAILED = 96;
+    public static final int UNKNOWN_WRITE_ACK_MODE = 97;
+
+    // Remote Allocation
+    public static final int INVALID_ALLOCATE_BLOCK_RANGE = 98;
+
     // UNKNOWN
     public static final int UNKNOWN = 1000;
 
@@ -254,6 +291,43 @@ public class ErrorCode extends RuntimeException {
         ErrorCodeMap.put(UNKNOWN_FILE_MANAGER_CLIENT_ID, "Unknown file manager client id argument to controller: ");
         ErrorCodeMap.put(FILE_CLIENT_INVALID_FIELD_TYPE, "Invalid field id type passed to file manager client");
 
+        // Block Checksum
+        ErrorCodeMap.put(UNKNOWN_CHECKSUM_TYPE, "Unknown block checksum type: ");
+
+        // Block Dedup
+        ErrorCodeMap.put(FINGERPRINT_INVALID, "Block fingerprint algorithm not available");
+
+        // File Block Size
+        ErrorCodeMap.put(INVALID_FILE_BLOCK_SIZE, "File block size must be power of 2 between default and max block size: ");
+
+        // Block Codec
+        ErrorCodeMap.put(UNKNOWN_BLOCK_CODEC, "Unknown block codec type: ");
+
+        // File Redundancy Policy
+        ErrorCodeMap.put(INVALID_REDUNDANCY_POLICY, "Invalid redundancy policy: ");
+        ErrorCodeMap.put(NON_EMPTY_FILE_POLICY, "Redundancy policy can only be changed on empty file");
+
+        // Block Write-Ahead Log
+        ErrorCodeMap.put(INVALID_DURABILITY, "Invalid durability level: ");
+        ErrorCodeMap.put(WAL_RECORD_INVALID, "Invalid write-ahead log record: ");
+
+        // Cache Policy
+        ErrorCodeMap.put(UNKNOWN_CACHE_POLICY, "Unknown cache policy: ");
+        ErrorCodeMap.put(CACHE_TRACE_INVALID, "Invalid cache trace: ");
+
+        // Block Verification
+        ErrorCodeMap.put(UNKNOWN_VERIFY_MODE, "Unknown block verify mode: ");
+
+        // Index Checkpoint
+        ErrorCodeMap.put(INDEX_CHECKPOINT_INVALID, "Invalid index checkpoint: ");
+
+        // Replica Write
+        ErrorCodeMap.put(REPLICA_WRITE_FAILED, "Not enough replicas written: ");
+        ErrorCodeMap.put(UNKNOWN_WRITE_ACK_MODE, "Unknown write ack mode: ");
+
+        // Remote Allocation
+        ErrorCodeMap.put(INVALID_ALLOCATE_BLOCK_RANGE, "Allocated blocks out of file range: ");
+
         // Unknown
         ErrorCodeMap.put(UNKNOWN, "Unknown exception");
     }
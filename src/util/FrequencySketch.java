@@ -0,0 +1,77 @@
+package util;
+
+// count-min sketch of 4-bit access counters, halved periodically so that old popularity fades
+public class FrequencySketch {
+    private final static long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+    private final static long RESET_MASK = 0x7777777777777777L;
+    private final static int MAX_COUNT = 15;
+
+    private long[] table;       // 16 counters per long
+    private int tableMask;
+    private long sampleSize;    // additions before counters are halved
+    private long additions;
+
+    public FrequencySketch(long capacity) {
+        ensureCapacity(capacity);
+    }
+
+    // grow counters for given number of cached keys, counts are lost when resized
+    public void ensureCapacity(long capacity) {
+        int length = 8;
+        while (length < capacity && length < (1 << 30))
+            length <<= 1;
+        if (null != table && table.length >= length)
+            return;
+
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10L * Math.max(capacity, 1);
+        additions = 0;
+    }
+
+    private static long spread(int hashCode) {
+        long hash = hashCode * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private int indexOf(long hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    // estimated accesses of key, at most 15
+    public int frequency(Object key) {
+        long hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; ++row) {
+            int offset = (int) ((hash >>> (row << 2)) & 15) << 2;
+            int count = (int) ((table[indexOf(hash, row)] >>> offset) & 15);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    public void increment(Object key) {
+        long hash = spread(key.hashCode());
+        boolean isAdded = false;
+        for (int row = 0; row < SEEDS.length; ++row) {
+            int index = indexOf(hash, row);
+            int offset = (int) ((hash >>> (row << 2)) & 15) << 2;
+            if (((table[index] >>> offset) & 15) < MAX_COUNT) {
+                table[index] += 1L << offset;
+                isAdded = true;
+            }
+        }
+
+        if (isAdded && ++additions >= sampleSize)
+            reset();
+    }
+
+    // halve all counters
+    private void reset() {
+        for (int i = 0; i < table.length; ++i)
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        additions /= 2;
+    }
+}
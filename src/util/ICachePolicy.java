@@ -0,0 +1,41 @@
+package util;
+
+import java.util.function.Consumer;
+
+// decides which keys a bounded cache keeps, cache owns the values and calls back on every access
+public interface ICachePolicy<K> {
+    // access to cached key
+    void onHit(K key);
+
+    // access to key not cached, counted by frequency based policies
+    void onMiss(K key);
+
+    // add key after a miss, keys to drop from cache are passed to evictor,
+    // the new key itself when it is not admitted
+    void onInsert(K key, Consumer<K> evictor);
+
+    // key dropped by cache itself
+    void onRemove(K key);
+
+    boolean contains(K key);
+
+    long size();
+
+    long getCapacity();
+
+    // capacity in entries, cache removes keys beyond it before shrinking
+    void setCapacity(long capacity);
+
+    static <K> ICachePolicy<K> getPolicy(String name, long capacity) {
+        switch (name) {
+            case LruPolicy.NAME:
+                return new LruPolicy<>(capacity);
+            case SlruPolicy.NAME:
+                return new SlruPolicy<>(capacity);
+            case TinyLfuPolicy.NAME:
+                return new TinyLfuPolicy<>(capacity);
+            default:
+                throw new ErrorCode(ErrorCode.UNKNOWN_CACHE_POLICY, name);
+        }
+    }
+}
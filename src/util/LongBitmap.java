@@ -0,0 +1,103 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.function.LongConsumer;
+
+// sparse bitmap of non-negative longs, dense id ranges cost one bit per id
+public class LongBitmap {
+    private final static int CHUNK_BITS = 12;   // 4096 ids per chunk
+    private final static int CHUNK_WORDS = (1 << CHUNK_BITS) / Long.SIZE;
+
+    private final HashMap<Long, long[]> chunkMap;
+    private long size;
+
+    public LongBitmap() {
+        this.chunkMap = new HashMap<>();
+        this.size = 0;
+    }
+
+    public boolean add(long value) {
+        long[] chunk = chunkMap.computeIfAbsent(value >>> CHUNK_BITS, k -> new long[CHUNK_WORDS]);
+        int bit = (int) (value & ((1 << CHUNK_BITS) - 1));
+        long mask = 1L << (bit & (Long.SIZE - 1));
+
+        if ((chunk[bit >>> 6] & mask) != 0)
+            return false;
+        chunk[bit >>> 6] |= mask;
+        ++size;
+        return true;
+    }
+
+    public boolean remove(long value) {
+        long[] chunk = chunkMap.get(value >>> CHUNK_BITS);
+        if (null == chunk)
+            return false;
+
+        int bit = (int) (value & ((1 << CHUNK_BITS) - 1));
+        long mask = 1L << (bit & (Long.SIZE - 1));
+        if ((chunk[bit >>> 6] & mask) == 0)
+            return false;
+        chunk[bit >>> 6] &= ~mask;
+        --size;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        long[] chunk = chunkMap.get(value >>> CHUNK_BITS);
+        if (null == chunk)
+            return false;
+
+        int bit = (int) (value & ((1 << CHUNK_BITS) - 1));
+        return (chunk[bit >>> 6] & (1L << (bit & (Long.SIZE - 1)))) != 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        for (Long chunkKey : chunkMap.keySet()) {
+            long[] chunk = chunkMap.get(chunkKey);
+            long base = chunkKey << CHUNK_BITS;
+            for (int i = 0; i < CHUNK_WORDS; ++i) {
+                long word = chunk[i];
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    consumer.accept(base + ((long) i << 6) + bit);
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    // serialized size: chunk count, then key and words of each chunk
+    public int serializedSize() {
+        return Integer.BYTES + chunkMap.size() * (Long.BYTES + CHUNK_WORDS * Long.BYTES);
+    }
+
+    // write chunks as they are, one bit per id instead of a long per id
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(chunkMap.size());
+        for (Long chunkKey : chunkMap.keySet()) {
+            buffer.putLong(chunkKey);
+            for (long word : chunkMap.get(chunkKey))
+                buffer.putLong(word);
+        }
+    }
+
+    public static LongBitmap readFrom(ByteBuffer buffer) {
+        LongBitmap bitmap = new LongBitmap();
+        int chunkNum = buffer.getInt();
+        for (int c = 0; c < chunkNum; ++c) {
+            long chunkKey = buffer.getLong();
+            long[] chunk = new long[CHUNK_WORDS];
+            for (int i = 0; i < CHUNK_WORDS; ++i) {
+                chunk[i] = buffer.getLong();
+                bitmap.size += Long.bitCount(chunk[i]);
+            }
+            bitmap.chunkMap.put(chunkKey, chunk);
+        }
+        return bitmap;
+    }
+}
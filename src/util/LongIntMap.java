@@ -0,0 +1,126 @@
+package util;
+
+import java.util.function.LongConsumer;
+
+// open-addressing hash map from positive long keys to int values, no boxing and no entry objects
+public class LongIntMap {
+    private final static int MIN_CAPACITY = 16;
+    private final static long EMPTY = 0;     // keys must be positive
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.size = 0;
+    }
+
+    // spread sequential ids over table, linear probing clusters badly otherwise
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    // value of key, given default value if absent
+    public int get(long key, int defaultValue) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return values[i];
+            if (keys[i] == EMPTY)
+                return defaultValue;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return true;
+            if (keys[i] == EMPTY)
+                return false;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key <= EMPTY)
+            throw new IllegalArgumentException(String.valueOf(key));
+
+        int i = slot(key);
+        for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+
+        // keep load factor under one half so probe sequences stay short
+        if (++size * 2 > keys.length)
+            resize(keys.length * 2);
+    }
+
+    // remove key, return its value or given default value if absent
+    public int remove(long key, int defaultValue) {
+        int i = slot(key);
+        for (; keys[i] != key; i = (i + 1) & mask) {
+            if (keys[i] == EMPTY)
+                return defaultValue;
+        }
+        int value = values[i];
+
+        // shift following entries of the probe sequence back, no tombstones needed
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // entry at j may fill hole only if its home slot is not inside (hole, j]
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        --size;
+        return value;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != EMPTY)
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    public void forEachKey(LongConsumer action) {
+        for (long key : keys) {
+            if (key != EMPTY)
+                action.accept(key);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+    }
+}
@@ -0,0 +1,54 @@
+package util;
+
+import java.util.LinkedHashSet;
+import java.util.function.Consumer;
+
+// least recently used key is evicted
+public class LruPolicy<K> extends AbstractCachePolicy<K> {
+    public final static String NAME = "LRU";
+
+    private final LinkedHashSet<K> keySet;    // least recently used first
+
+    public LruPolicy(long capacity) {
+        super(capacity);
+        this.keySet = new LinkedHashSet<>();
+    }
+
+    @Override
+    public void onHit(K key) {
+        super.onHit(key);
+        if (keySet.remove(key))
+            keySet.add(key);
+    }
+
+    @Override
+    public void onInsert(K key, Consumer<K> evictor) {
+        keySet.remove(key);
+        keySet.add(key);
+        while (keySet.size() > capacity) {
+            K victim = keySet.iterator().next();
+            keySet.remove(victim);
+            evict(victim, key, evictor);
+        }
+    }
+
+    @Override
+    public void onRemove(K key) {
+        keySet.remove(key);
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return keySet.contains(key);
+    }
+
+    @Override
+    public long size() {
+        return keySet.size();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
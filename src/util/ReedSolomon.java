@@ -0,0 +1,157 @@
+package util;
+
+// systematic Reed-Solomon code over GF(2^8), parity rows taken from a Cauchy matrix
+// so that any dataNum of dataNum + parityNum shards recover the data
+public class ReedSolomon {
+    private final static int FIELD_SIZE = 256;
+    private final static int PRIMITIVE_POLYNOMIAL = 0x11D;
+
+    private final static byte[] EXP_TABLE = new byte[FIELD_SIZE * 2];
+    private final static int[] LOG_TABLE = new int[FIELD_SIZE];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < FIELD_SIZE - 1; ++i) {
+            EXP_TABLE[i] = (byte) x;
+            LOG_TABLE[x] = i;
+            x <<= 1;
+            if (x >= FIELD_SIZE)
+                x ^= PRIMITIVE_POLYNOMIAL;
+        }
+        for (int i = FIELD_SIZE - 1; i < EXP_TABLE.length; ++i)
+            EXP_TABLE[i] = EXP_TABLE[i - (FIELD_SIZE - 1)];
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0)
+            return 0;
+        return EXP_TABLE[LOG_TABLE[a] + LOG_TABLE[b]] & 0xFF;
+    }
+
+    private static int inverse(int a) {
+        return EXP_TABLE[FIELD_SIZE - 1 - LOG_TABLE[a]] & 0xFF;
+    }
+
+    private final int dataNum;
+    private final int parityNum;
+    private final int[][] encodeMatrix;     // (dataNum + parityNum) x dataNum, identity on top
+
+    public ReedSolomon(int dataNum, int parityNum) {
+        if (dataNum <= 0 || parityNum < 0 || dataNum + parityNum > FIELD_SIZE)
+            throw new IllegalArgumentException(dataNum + "+" + parityNum);
+
+        this.dataNum = dataNum;
+        this.parityNum = parityNum;
+        this.encodeMatrix = new int[dataNum + parityNum][dataNum];
+
+        for (int i = 0; i < dataNum; ++i)
+            encodeMatrix[i][i] = 1;
+        // Cauchy element 1 / (x_i + y_j), x_i = dataNum + i and y_j = j never collide
+        for (int i = 0; i < parityNum; ++i) {
+            for (int j = 0; j < dataNum; ++j)
+                encodeMatrix[dataNum + i][j] = inverse((dataNum + i) ^ j);
+        }
+    }
+
+    // compute parity shards of given equal-length data shards
+    public byte[][] encode(byte[][] dataShards) {
+        int length = dataShards[0].length;
+        byte[][] parityShards = new byte[parityNum][length];
+        for (int i = 0; i < parityNum; ++i)
+            multiplyRow(encodeMatrix[dataNum + i], dataShards, parityShards[i]);
+        return parityShards;
+    }
+
+    // recover data shards from data and parity shards, missing shards are null
+    public byte[][] decode(byte[][] shards) {
+        int[] rows = new int[dataNum];
+        byte[][] inputShards = new byte[dataNum][];
+        int found = 0;
+        for (int i = 0; i < shards.length && found < dataNum; ++i) {
+            if (null != shards[i]) {
+                rows[found] = i;
+                inputShards[found] = shards[i];
+                ++found;
+            }
+        }
+        if (found < dataNum)
+            throw new IllegalArgumentException("too few shards: " + found);
+
+        // all data shards present
+        boolean isComplete = true;
+        for (int i = 0; i < dataNum; ++i)
+            isComplete &= (rows[i] == i);
+        if (isComplete)
+            return inputShards;
+
+        int[][] subMatrix = new int[dataNum][];
+        for (int i = 0; i < dataNum; ++i)
+            subMatrix[i] = encodeMatrix[rows[i]].clone();
+        int[][] decodeMatrix = invert(subMatrix);
+
+        int length = inputShards[0].length;
+        byte[][] dataShards = new byte[dataNum][];
+        for (int i = 0; i < dataNum; ++i) {
+            if (null != shards[i]) {
+                dataShards[i] = shards[i];
+            } else {
+                dataShards[i] = new byte[length];
+                multiplyRow(decodeMatrix[i], inputShards, dataShards[i]);
+            }
+        }
+        return dataShards;
+    }
+
+    // output = sum of coefficient * shard
+    private static void multiplyRow(int[] coefficients, byte[][] shards, byte[] output) {
+        for (int j = 0; j < coefficients.length; ++j) {
+            int coefficient = coefficients[j];
+            if (coefficient == 0)
+                continue;
+
+            byte[] shard = shards[j];
+            int logCoefficient = LOG_TABLE[coefficient];
+            for (int n = 0; n < output.length; ++n) {
+                int value = shard[n] & 0xFF;
+                if (value != 0)
+                    output[n] ^= EXP_TABLE[logCoefficient + LOG_TABLE[value]];
+            }
+        }
+    }
+
+    // Gauss-Jordan elimination, matrix is consumed
+    private static int[][] invert(int[][] matrix) {
+        int size = matrix.length;
+        int[][] result = new int[size][size];
+        for (int i = 0; i < size; ++i)
+            result[i][i] = 1;
+
+        for (int col = 0; col < size; ++col) {
+            int pivot = col;
+            while (pivot < size && matrix[pivot][col] == 0)
+                ++pivot;
+            if (pivot == size)
+                throw new IllegalArgumentException("singular matrix");
+
+            int[] temp = matrix[col]; matrix[col] = matrix[pivot]; matrix[pivot] = temp;
+            temp = result[col]; result[col] = result[pivot]; result[pivot] = temp;
+
+            int scale = inverse(matrix[col][col]);
+            for (int j = 0; j < size; ++j) {
+                matrix[col][j] = multiply(matrix[col][j], scale);
+                result[col][j] = multiply(result[col][j], scale);
+            }
+
+            for (int row = 0; row < size; ++row) {
+                int factor = matrix[row][col];
+                if (row == col || factor == 0)
+                    continue;
+                for (int j = 0; j < size; ++j) {
+                    matrix[row][j] ^= multiply(factor, matrix[col][j]);
+                    result[row][j] ^= multiply(factor, result[col][j]);
+                }
+            }
+        }
+        return result;
+    }
+}
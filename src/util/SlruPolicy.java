@@ -0,0 +1,75 @@
+package util;
+
+import java.util.LinkedHashSet;
+import java.util.function.Consumer;
+
+// segmented LRU: new keys enter probation segment and move to protected segment when hit again,
+// so keys seen once by a scan are evicted before keys of the working set
+public class SlruPolicy<K> extends AbstractCachePolicy<K> {
+    public final static String NAME = "SLRU";
+    private final static double PROTECTED_RATIO = 0.8;
+
+    private final LinkedHashSet<K> probationSet;    // least recently used first
+    private final LinkedHashSet<K> protectedSet;
+
+    public SlruPolicy(long capacity) {
+        super(capacity);
+        this.probationSet = new LinkedHashSet<>();
+        this.protectedSet = new LinkedHashSet<>();
+    }
+
+    private long protectedCapacity() {
+        return (long) (capacity * PROTECTED_RATIO);
+    }
+
+    @Override
+    public void onHit(K key) {
+        super.onHit(key);
+        if (protectedSet.remove(key)) {
+            protectedSet.add(key);
+        } else if (probationSet.remove(key)) {
+            protectedSet.add(key);
+            // demote least recently used protected key back to probation
+            while (protectedSet.size() > protectedCapacity()) {
+                K demoted = protectedSet.iterator().next();
+                protectedSet.remove(demoted);
+                probationSet.add(demoted);
+            }
+        }
+    }
+
+    @Override
+    public void onInsert(K key, Consumer<K> evictor) {
+        if (contains(key))
+            return;
+
+        probationSet.add(key);
+        while (size() > capacity) {
+            LinkedHashSet<K> segment = probationSet.isEmpty() ? protectedSet : probationSet;
+            K victim = segment.iterator().next();
+            segment.remove(victim);
+            evict(victim, key, evictor);
+        }
+    }
+
+    @Override
+    public void onRemove(K key) {
+        if (!probationSet.remove(key))
+            protectedSet.remove(key);
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return probationSet.contains(key) || protectedSet.contains(key);
+    }
+
+    @Override
+    public long size() {
+        return probationSet.size() + protectedSet.size();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
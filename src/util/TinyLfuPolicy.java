@@ -0,0 +1,121 @@
+package util;
+
+import java.util.LinkedHashSet;
+import java.util.function.Consumer;
+
+// W-TinyLFU: new keys wait in a small LRU window, a key leaving the window enters the main SLRU
+// only if it was accessed more often than the main victim, so one-off scans cannot flush the working set
+public class TinyLfuPolicy<K> extends AbstractCachePolicy<K> {
+    public final static String NAME = "TinyLFU";
+    private final static double WINDOW_RATIO = 0.01;
+    private final static double PROTECTED_RATIO = 0.8;
+
+    private final FrequencySketch sketch;
+    private final LinkedHashSet<K> windowSet;       // least recently used first
+    private final LinkedHashSet<K> probationSet;
+    private final LinkedHashSet<K> protectedSet;
+
+    public TinyLfuPolicy(long capacity) {
+        super(capacity);
+        this.sketch = new FrequencySketch(capacity);
+        this.windowSet = new LinkedHashSet<>();
+        this.probationSet = new LinkedHashSet<>();
+        this.protectedSet = new LinkedHashSet<>();
+    }
+
+    private long windowCapacity() {
+        return Math.max(1, (long) (capacity * WINDOW_RATIO));
+    }
+
+    private long protectedCapacity() {
+        return (long) ((capacity - windowCapacity()) * PROTECTED_RATIO);
+    }
+
+    @Override
+    public void setCapacity(long capacity) {
+        super.setCapacity(capacity);
+        sketch.ensureCapacity(capacity);
+    }
+
+    @Override
+    public void onHit(K key) {
+        super.onHit(key);
+        sketch.increment(key);
+
+        if (windowSet.remove(key)) {
+            windowSet.add(key);
+        } else if (protectedSet.remove(key)) {
+            protectedSet.add(key);
+        } else if (probationSet.remove(key)) {
+            protectedSet.add(key);
+            while (protectedSet.size() > protectedCapacity()) {
+                K demoted = protectedSet.iterator().next();
+                protectedSet.remove(demoted);
+                probationSet.add(demoted);
+            }
+        }
+    }
+
+    @Override
+    public void onMiss(K key) {
+        super.onMiss(key);
+        sketch.increment(key);
+    }
+
+    @Override
+    public void onInsert(K key, Consumer<K> evictor) {
+        if (contains(key))
+            return;
+
+        windowSet.add(key);
+        while (windowSet.size() > windowCapacity() || size() > capacity) {
+            if (windowSet.size() <= windowCapacity()) {
+                // capacity shrank, drop from main first
+                LinkedHashSet<K> segment = !probationSet.isEmpty() ? probationSet : !protectedSet.isEmpty() ? protectedSet : windowSet;
+                K victim = segment.iterator().next();
+                segment.remove(victim);
+                evict(victim, key, evictor);
+                continue;
+            }
+
+            K candidate = windowSet.iterator().next();
+            windowSet.remove(candidate);
+            if (size() < capacity) {
+                probationSet.add(candidate);
+                continue;
+            }
+
+            // admission: candidate leaving window replaces main victim only if accessed more often
+            LinkedHashSet<K> segment = !probationSet.isEmpty() ? probationSet : protectedSet;
+            K victim = segment.isEmpty() ? null : segment.iterator().next();
+            if (null != victim && sketch.frequency(candidate) > sketch.frequency(victim)) {
+                segment.remove(victim);
+                evict(victim, candidate, evictor);
+                probationSet.add(candidate);
+            } else {
+                evict(candidate, candidate, evictor);
+            }
+        }
+    }
+
+    @Override
+    public void onRemove(K key) {
+        if (!windowSet.remove(key) && !probationSet.remove(key))
+            protectedSet.remove(key);
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return windowSet.contains(key) || probationSet.contains(key) || protectedSet.contains(key);
+    }
+
+    @Override
+    public long size() {
+        return windowSet.size() + probationSet.size() + protectedSet.size();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}